@@ -0,0 +1,67 @@
+package com.example.websocket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broadcast fan-out through {@link BroadcastEngine} for each wire protocol, isolated from
+ * inbound parsing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+    @Param({"1", "1000", "10000"})
+    int connections;
+
+    @Param({"16", "1024", "16384"})
+    int payloadSize;
+
+    @Param({"JSON", "BINARY"})
+    WireProtocol protocol;
+
+    private ServerFixture fixture;
+    private ClientConnection sender;
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        fixture = new ServerFixture(connections, protocol);
+        sender = fixture.connection(0);
+        payload = ServerFixture.payload(payloadSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public long broadcast() {
+        fixture.resources().broadcastEngine().broadcast(
+            codec -> codec.broadcast(sender, payload, 0, System.currentTimeMillis()), ConnectionRegistry.NO_HANDLE, false);
+        return fixture.bytesWritten();
+    }
+
+    @Benchmark
+    public long presence() {
+        fixture.resources().broadcastEngine().broadcast(
+            codec -> codec.presence(MessageType.USER_JOINED, sender, connections), ConnectionRegistry.NO_HANDLE, true);
+        return fixture.bytesWritten();
+    }
+}
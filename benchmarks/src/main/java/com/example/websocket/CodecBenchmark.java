@@ -0,0 +1,87 @@
+package com.example.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message parsing, encoding and timestamp formatting on their own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    private static final Peer PEER = new RemotePeer("3f2504e0-4f89-11d3-9a0c-0305e82c3301", 42, "bench");
+    private static final MessageCodec JSON_CODEC = new JsonMessageCodec(TimestampFormat.ISO);
+    private static final MessageCodec BINARY_CODEC = new BinaryMessageCodec();
+
+    @Param({"16", "1024", "16384"})
+    int payloadSize;
+
+    private String payload;
+    private String inbound;
+
+    @Setup
+    public void setUp() {
+        payload = ServerFixture.payload(payloadSize);
+        inbound = new JsonObject().put("type", "broadcast").put("message", payload).encode();
+    }
+
+    @Benchmark
+    public JsonObject jsonParse() {
+        return new JsonObject(inbound);
+    }
+
+    @Benchmark
+    public int jsonEncode() {
+        return release(JSON_CODEC.broadcast(PEER, payload, 0, System.currentTimeMillis()));
+    }
+
+    @Benchmark
+    public int jsonPong() {
+        return release(JSON_CODEC.pong("2024-01-15T10:30:00.123", 0));
+    }
+
+    @Benchmark
+    public int jsonEcho() {
+        return release(JSON_CODEC.echo(payload));
+    }
+
+    @Benchmark
+    public int binaryEncode() {
+        return release(BINARY_CODEC.broadcast(PEER, payload, 0, System.currentTimeMillis()));
+    }
+
+    @Benchmark
+    public String timestamp() {
+        return LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+
+    @Benchmark
+    public String cachedTimestamp() {
+        return TimestampService.isoNow();
+    }
+
+    private static int release(ByteBuf buf) {
+        int length = buf.readableBytes();
+        buf.release();
+        return length;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.websocket;
+
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of one inbound JSON message through {@code handleIncomingMessage}: parse,
+ * dispatch, encode and write. Broadcasts fan out to every other connection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDispatchBenchmark {
+    @Param({"1", "1000", "10000"})
+    int connections;
+
+    @Param({"16", "1024", "16384"})
+    int payloadSize;
+
+    private ServerFixture fixture;
+    private ClientConnection sender;
+    private String ping;
+    private String echo;
+    private String broadcast;
+    private String privateMessage;
+    private String general;
+
+    @Setup
+    public void setUp() {
+        fixture = new ServerFixture(connections, WireProtocol.JSON);
+        sender = fixture.connection(0);
+        String payload = ServerFixture.payload(payloadSize);
+        ping = new JsonObject().put("type", "ping").put("timestamp", "2024-01-01T00:00:00").encode();
+        echo = new JsonObject().put("type", "echo").put("message", payload).encode();
+        broadcast = new JsonObject().put("type", "broadcast").put("message", payload).encode();
+        privateMessage = new JsonObject().put("type", "private")
+            .put("targetId", fixture.connection(connections - 1).id())
+            .put("message", payload).encode();
+        general = new JsonObject().put("type", "chat").put("message", payload).encode();
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public long ping() {
+        fixture.server().handleIncomingMessage(sender, ping);
+        return fixture.bytesWritten();
+    }
+
+    @Benchmark
+    public long echo() {
+        fixture.server().handleIncomingMessage(sender, echo);
+        return fixture.bytesWritten();
+    }
+
+    @Benchmark
+    public long privateMessage() {
+        fixture.server().handleIncomingMessage(sender, privateMessage);
+        return fixture.bytesWritten();
+    }
+
+    @Benchmark
+    public long generalMessage() {
+        fixture.server().handleIncomingMessage(sender, general);
+        return fixture.bytesWritten();
+    }
+
+    @Benchmark
+    public long broadcast() {
+        fixture.server().handleIncomingMessage(sender, broadcast);
+        return fixture.bytesWritten();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.websocket;
+
+import io.netty.util.ReferenceCountUtil;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.http.WebSocketFrame;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonObject;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An in-process server with fake sockets. Every connection is owned by one event-loop context
+ * that the benchmark thread dispatches on, so sends are written inline exactly as they are on
+ * the event loop, and the fake sockets just count and release the frames they are given.
+ */
+class ServerFixture {
+    private final Vertx vertx = Vertx.vertx();
+    private final ContextInternal context = ((VertxInternal) vertx).createEventLoopContext();
+    private final ServerResources resources;
+    private final WebSocketServer server;
+    private final List<ClientConnection> connections = new ArrayList<>();
+    private long bytesWritten;
+    private ContextInternal previous;
+
+    ServerFixture(int connectionCount, WireProtocol protocol) {
+        // No history files: the benchmarks measure dispatch, not the disk
+        resources = new ServerResources(new ServerOptions(new JsonObject())
+            .setHistoryEnabled(false));
+        server = new WebSocketServer(resources);
+        // Registered on the owning context, as the server does, so they join its group at once
+        previous = context.beginDispatch();
+        for (int i = 0; i < connectionCount; i++) {
+            ClientConnection connection = new ClientConnection(resources.registry().allocateId(),
+                resources.registry().allocateHandle(), protocol, resources.codec(protocol), fakeSocket(), context,
+                resources.options(), resources.outboundStats(), resources.compressor());
+            resources.registry().register(connection);
+            connections.add(connection);
+        }
+    }
+
+    void close() {
+        context.endDispatch(previous);
+        vertx.close();
+    }
+
+    WebSocketServer server() {
+        return server;
+    }
+
+    ServerResources resources() {
+        return resources;
+    }
+
+    ClientConnection connection(int index) {
+        return connections.get(index);
+    }
+
+    // Sink for benchmark methods, so the writes cannot be optimized away
+    long bytesWritten() {
+        return bytesWritten;
+    }
+
+    static String payload(int size) {
+        return "x".repeat(size);
+    }
+
+    private ServerWebSocket fakeSocket() {
+        return (ServerWebSocket) Proxy.newProxyInstance(ServerWebSocket.class.getClassLoader(),
+            new Class<?>[] {ServerWebSocket.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "writeFrame":
+                        WebSocketFrame frame = (WebSocketFrame) args[0];
+                        bytesWritten += frame.binaryData().length();
+                        ReferenceCountUtil.release(frame);
+                        return Future.succeededFuture();
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        break;
+                }
+                Class<?> returnType = method.getReturnType();
+                if (returnType == ServerWebSocket.class) {
+                    return proxy;
+                }
+                if (returnType == Future.class) {
+                    return Future.succeededFuture();
+                }
+                if (returnType == boolean.class) {
+                    return false;
+                }
+                return null;
+            });
+    }
+}
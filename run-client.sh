@@ -15,7 +15,7 @@ fi
 # Check Java version
 if ! command -v java &> /dev/null; then
     echo "❌ Java is not installed or not in PATH"
-    echo "Please install Java 11+ and try again"
+    echo "Please install Java 21+ and try again"
     exit 1
 fi
 
@@ -0,0 +1,308 @@
+package com.example.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.List;
+
+/**
+ * Compact binary protocol, negotiated with the {@code chat.binary.v1} subprotocol.
+ *
+ * <p>Every frame starts with the {@link MessageType} code byte. Integers are unsigned LEB128
+ * varints, strings are a varint byte length followed by UTF-8, and timestamps are 8-byte
+ * big-endian epoch milliseconds. Connections are referred to by their interned handle, usually a
+ * one- or two-byte varint, rather than by their id string: a random per-server prefix and a
+ * base-36 counter such as {@code k3f9z2.1b}.
+ *
+ * <pre>
+ * client to server
+ *   PING         clientTimestamp:i64
+ *   BROADCAST    message:str
+ *   PRIVATE      targetHandle:varint message:str
+ *   ECHO         message:str
+ *   SUBSCRIBE    pattern:str
+ *   UNSUBSCRIBE  pattern:str
+ *   PUBLISH      topic:str message:str
+ *   REPLAY       lastSeq:i64
+ *
+ * server to client
+ *   WELCOME      handle:varint connectionId:str timestamp:i64 message:str resumeToken:str resumed:u8
+ *   PONG         timestamp:i64 originalTimestamp:i64
+ *   BROADCAST    fromHandle:varint message:str timestamp:i64 seq:i64
+ *   PRIVATE      fromHandle:varint message:str timestamp:i64 seq:i64
+ *   PRIVATE_SENT targetHandle:varint message:str timestamp:i64
+ *   ECHO         originalMessage:str timestamp:i64
+ *   USER_JOINED  handle:varint totalConnections:varint timestamp:i64
+ *   USER_LEFT    handle:varint totalConnections:varint timestamp:i64
+ *   PRESENCE     joinedCount:varint handle:varint* leftCount:varint handle:varint* totalConnections:varint
+ *                timestamp:i64
+ *   ERROR        message:str timestamp:i64
+ *   RECONNECT    delayMs:varint reason:str timestamp:i64
+ *   TOPIC_MESSAGE topic:str fromHandle:varint message:str timestamp:i64
+ *   SUBSCRIBED   pattern:str timestamp:i64
+ *   UNSUBSCRIBED pattern:str timestamp:i64
+ *   REPLAY_COMPLETE lastSeq:i64 replayed:varint gap:u8 timestamp:i64
+ * </pre>
+ *
+ * <p>A seq of 0 means the message was not recorded in the {@link MessageHistory}. The resume
+ * token is empty when session resumption is disabled.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    private static final int MAX_VARINT_BYTES = 5;
+    private static final int TIMESTAMP_BYTES = 8;
+
+    // Decodes one client frame and hands its fields straight to the handler
+    public void decode(ClientConnection connection, Buffer frame, InboundHandler handler) {
+        Reader reader = new Reader(frame);
+        int code = reader.readUnsignedByte();
+        MessageType type = MessageType.fromCode(code);
+        if (type == null) {
+            handler.onError(connection, "Unsupported message type: " + code);
+            return;
+        }
+        switch (type) {
+            case PING:
+                long clientTimestamp = reader.readLong();
+                handler.onPing(connection, Long.toString(clientTimestamp), clientTimestamp);
+                break;
+            case BROADCAST:
+                handler.onBroadcast(connection, reader.readString());
+                break;
+            case PRIVATE:
+                int targetHandle = reader.readVarInt();
+                String message = reader.readString();
+                handler.onPrivate(connection, null, targetHandle, message);
+                break;
+            case ECHO:
+                handler.onEcho(connection, reader.readString());
+                break;
+            case SUBSCRIBE:
+                handler.onSubscribe(connection, reader.readString());
+                break;
+            case UNSUBSCRIBE:
+                handler.onUnsubscribe(connection, reader.readString());
+                break;
+            case PUBLISH:
+                String topic = reader.readString();
+                handler.onPublish(connection, topic, reader.readString());
+                break;
+            case REPLAY:
+                handler.onReplay(connection, reader.readLong());
+                break;
+            default:
+                handler.onError(connection, "Unsupported message type: " + type.jsonName());
+                break;
+        }
+    }
+
+    @Override
+    public ByteBuf welcome(Peer peer, String resumeToken, boolean resumed, String message) {
+        String token = resumeToken != null ? resumeToken : "";
+        ByteBuf buf = allocate(2 * MAX_VARINT_BYTES + TIMESTAMP_BYTES + ByteBufUtil.utf8MaxBytes(token) + 1,
+            peer.id(), message);
+        buf.writeByte(MessageType.WELCOME.code());
+        writeVarInt(buf, peer.handle());
+        writeString(buf, peer.id());
+        buf.writeLong(System.currentTimeMillis());
+        writeString(buf, message);
+        writeString(buf, token);
+        buf.writeBoolean(resumed);
+        return buf;
+    }
+
+    @Override
+    public ByteBuf pong(String originalTimestamp, long originalEpochMillis) {
+        ByteBuf buf = Unpooled.buffer(1 + 2 * TIMESTAMP_BYTES);
+        buf.writeByte(MessageType.PONG.code());
+        buf.writeLong(System.currentTimeMillis());
+        buf.writeLong(originalEpochMillis);
+        return buf;
+    }
+
+    @Override
+    public ByteBuf broadcast(Peer from, String message, long seq, long timestamp) {
+        return sequencedMessage(MessageType.BROADCAST, from, message, seq, timestamp);
+    }
+
+    @Override
+    public ByteBuf privateMessage(Peer from, String message, long seq, long timestamp) {
+        return sequencedMessage(MessageType.PRIVATE, from, message, seq, timestamp);
+    }
+
+    @Override
+    public ByteBuf privateSent(Peer target, String message) {
+        return peerMessage(MessageType.PRIVATE_SENT, target, message);
+    }
+
+    @Override
+    public ByteBuf echo(String originalMessage) {
+        ByteBuf buf = allocate(TIMESTAMP_BYTES, originalMessage, null);
+        buf.writeByte(MessageType.ECHO.code());
+        writeString(buf, originalMessage);
+        buf.writeLong(System.currentTimeMillis());
+        return buf;
+    }
+
+    @Override
+    public ByteBuf presence(MessageType type, Peer subject, int totalConnections) {
+        ByteBuf buf = Unpooled.buffer(1 + 2 * MAX_VARINT_BYTES + TIMESTAMP_BYTES);
+        buf.writeByte(type.code());
+        writeVarInt(buf, subject.handle());
+        writeVarInt(buf, totalConnections);
+        buf.writeLong(System.currentTimeMillis());
+        return buf;
+    }
+
+    @Override
+    public ByteBuf presenceBatch(List<Peer> joined, List<Peer> left, int totalConnections) {
+        ByteBuf buf = Unpooled.buffer(1 + (3 + joined.size() + left.size()) * MAX_VARINT_BYTES + TIMESTAMP_BYTES);
+        buf.writeByte(MessageType.PRESENCE.code());
+        writeHandles(buf, joined);
+        writeHandles(buf, left);
+        writeVarInt(buf, totalConnections);
+        buf.writeLong(System.currentTimeMillis());
+        return buf;
+    }
+
+    @Override
+    public ByteBuf error(String message) {
+        ByteBuf buf = allocate(TIMESTAMP_BYTES, message, null);
+        buf.writeByte(MessageType.ERROR.code());
+        writeString(buf, message);
+        buf.writeLong(System.currentTimeMillis());
+        return buf;
+    }
+
+    @Override
+    public ByteBuf reconnect(long delayMs, String reason) {
+        ByteBuf buf = allocate(MAX_VARINT_BYTES + TIMESTAMP_BYTES, reason, null);
+        buf.writeByte(MessageType.RECONNECT.code());
+        writeVarInt(buf, (int) Math.min(delayMs, Integer.MAX_VALUE));
+        writeString(buf, reason);
+        buf.writeLong(System.currentTimeMillis());
+        return buf;
+    }
+
+    @Override
+    public ByteBuf topicMessage(String topic, Peer from, String message) {
+        ByteBuf buf = allocate(MAX_VARINT_BYTES + TIMESTAMP_BYTES, topic, message);
+        buf.writeByte(MessageType.TOPIC_MESSAGE.code());
+        writeString(buf, topic);
+        writeVarInt(buf, from.handle());
+        writeString(buf, message);
+        buf.writeLong(System.currentTimeMillis());
+        return buf;
+    }
+
+    @Override
+    public ByteBuf subscription(MessageType type, String pattern) {
+        ByteBuf buf = allocate(TIMESTAMP_BYTES, pattern, null);
+        buf.writeByte(type.code());
+        writeString(buf, pattern);
+        buf.writeLong(System.currentTimeMillis());
+        return buf;
+    }
+
+    @Override
+    public ByteBuf replayComplete(long lastSeq, int replayed, boolean gap) {
+        ByteBuf buf = Unpooled.buffer(1 + 2 * TIMESTAMP_BYTES + MAX_VARINT_BYTES + 1);
+        buf.writeByte(MessageType.REPLAY_COMPLETE.code());
+        buf.writeLong(lastSeq);
+        writeVarInt(buf, replayed);
+        buf.writeBoolean(gap);
+        buf.writeLong(System.currentTimeMillis());
+        return buf;
+    }
+
+    private ByteBuf peerMessage(MessageType type, Peer peer, String message) {
+        ByteBuf buf = allocate(MAX_VARINT_BYTES + TIMESTAMP_BYTES, message, null);
+        buf.writeByte(type.code());
+        writeVarInt(buf, peer.handle());
+        writeString(buf, message);
+        buf.writeLong(System.currentTimeMillis());
+        return buf;
+    }
+
+    private ByteBuf sequencedMessage(MessageType type, Peer peer, String message, long seq, long timestamp) {
+        ByteBuf buf = allocate(MAX_VARINT_BYTES + 2 * TIMESTAMP_BYTES, message, null);
+        buf.writeByte(type.code());
+        writeVarInt(buf, peer.handle());
+        writeString(buf, message);
+        buf.writeLong(timestamp);
+        buf.writeLong(seq);
+        return buf;
+    }
+
+    // Sizes the buffer for the type byte, the fixed fields and up to two strings
+    private static ByteBuf allocate(int fixedBytes, String first, String second) {
+        int size = 1 + fixedBytes;
+        if (first != null) {
+            size += MAX_VARINT_BYTES + ByteBufUtil.utf8MaxBytes(first);
+        }
+        if (second != null) {
+            size += MAX_VARINT_BYTES + ByteBufUtil.utf8MaxBytes(second);
+        }
+        return Unpooled.buffer(size);
+    }
+
+    private static void writeHandles(ByteBuf buf, List<Peer> peers) {
+        writeVarInt(buf, peers.size());
+        for (Peer peer : peers) {
+            writeVarInt(buf, peer.handle());
+        }
+    }
+
+    static void writeVarInt(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    static void writeString(ByteBuf buf, String value) {
+        writeVarInt(buf, ByteBufUtil.utf8Bytes(value));
+        ByteBufUtil.writeUtf8(buf, value);
+    }
+
+    // Sequential reader over a received frame; throws IndexOutOfBoundsException on truncated input
+    static final class Reader {
+        private final Buffer buffer;
+        private int position;
+
+        Reader(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int readUnsignedByte() {
+            return buffer.getUnsignedByte(position++);
+        }
+
+        long readLong() {
+            long value = buffer.getLong(position);
+            position += TIMESTAMP_BYTES;
+            return value;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 7 * MAX_VARINT_BYTES; shift += 7) {
+                int b = readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        String readString() {
+            int length = readVarInt();
+            String value = buffer.getString(position, position + length);
+            position += length;
+            return value;
+        }
+    }
+}
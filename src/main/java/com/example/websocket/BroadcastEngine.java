@@ -0,0 +1,156 @@
+package com.example.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Fans a message out to many connections. The message is serialized once per wire protocol
+ * into a reference-counted buffer that every recipient of that protocol shares, and
+ * recipients are grouped by the event loop that owns their socket so each loop receives a
+ * single batched write task. For recipients that negotiated permessage-deflate the encoded
+ * buffer is also compressed once, so compression cost does not grow with the fan-out.
+ */
+public class BroadcastEngine {
+    private static final Logger logger = LoggerFactory.getLogger(BroadcastEngine.class);
+    private static final WireProtocol[] PROTOCOLS = WireProtocol.values();
+
+    private final ConnectionRegistry registry;
+    private final ServerMetrics metrics;
+    private final FrameCompressor compressor;
+    private final Function<WireProtocol, MessageCodec> codecs;
+
+    public BroadcastEngine(ConnectionRegistry registry, ServerMetrics metrics, FrameCompressor compressor,
+                           Function<WireProtocol, MessageCodec> codecs) {
+        this.registry = registry;
+        this.metrics = metrics;
+        this.compressor = compressor;
+        this.codecs = codecs;
+    }
+
+    // Sends to every registered connection but the one with excludeHandle, reusing the registry's
+    // per-context grouping. Presence frames may be coalesced away by a slow consumer's backlog.
+    public void broadcast(Function<MessageCodec, ByteBuf> encoder, int excludeHandle, boolean presence) {
+        int recipients = registry.size();
+        if (recipients == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        ByteBuf[] encoded = new ByteBuf[PROTOCOLS.length];
+        ByteBuf[] compressed = new ByteBuf[PROTOCOLS.length];
+        for (WireProtocol protocol : PROTOCOLS) {
+            if (registry.hasConnections(protocol)) {
+                encoded[protocol.ordinal()] = encoder.apply(codecs.apply(protocol));
+                if (registry.hasCompressingConnections(protocol)) {
+                    compressed[protocol.ordinal()] = compressor.compress(encoded[protocol.ordinal()]);
+                }
+            }
+        }
+        fanOut(registry.contexts(), registry::ownedBy, encoded, compressed, excludeHandle, presence);
+        metrics.broadcast(recipients, System.nanoTime() - start);
+    }
+
+    // Sends to an arbitrary set of connections, grouping them by owning context first
+    public void broadcast(Collection<ClientConnection> recipients, Function<MessageCodec, ByteBuf> encoder,
+                          int excludeHandle, boolean presence) {
+        if (recipients.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<Context, List<ClientConnection>> groups = new HashMap<>();
+        ByteBuf[] encoded = new ByteBuf[PROTOCOLS.length];
+        ByteBuf[] compressed = new ByteBuf[PROTOCOLS.length];
+        boolean[] compressionTried = new boolean[PROTOCOLS.length];
+        for (ClientConnection connection : recipients) {
+            groups.computeIfAbsent(connection.context(), c -> new ArrayList<>()).add(connection);
+            int protocol = connection.protocol().ordinal();
+            if (encoded[protocol] == null) {
+                encoded[protocol] = encoder.apply(connection.codec());
+            }
+            if (connection.compresses() && !compressionTried[protocol]) {
+                compressionTried[protocol] = true;
+                compressed[protocol] = compressor.compress(encoded[protocol]);
+            }
+        }
+        fanOut(groups.keySet(), groups::get, encoded, compressed, excludeHandle, presence);
+        metrics.broadcast(recipients.size(), System.nanoTime() - start);
+    }
+
+    private void fanOut(Collection<Context> contexts, GroupLookup lookup, ByteBuf[] encoded, ByteBuf[] compressed,
+                        int excludeHandle, boolean presence) {
+        try {
+            Context current = Vertx.currentContext();
+            for (Context context : contexts) {
+                if (context == current) {
+                    writeAll(lookup.group(context), encoded, compressed, excludeHandle, presence);
+                } else {
+                    // Hold references for the task; released once the owning loop has written them
+                    ByteBuf[] shared = retainAll(encoded);
+                    ByteBuf[] sharedCompressed = retainAll(compressed);
+                    context.runOnContext(v -> {
+                        try {
+                            writeAll(lookup.group(context), shared, sharedCompressed, excludeHandle, presence);
+                        } finally {
+                            releaseAll(shared);
+                            releaseAll(sharedCompressed);
+                        }
+                    });
+                }
+            }
+        } finally {
+            releaseAll(encoded);
+            releaseAll(compressed);
+        }
+    }
+
+    // Runs on the group's event loop, which is the only thread that changes it
+    private void writeAll(List<ClientConnection> group, ByteBuf[] encoded, ByteBuf[] compressed,
+                          int excludeHandle, boolean presence) {
+        for (int i = 0, n = group.size(); i < n; i++) {
+            ClientConnection connection = group.get(i);
+            ByteBuf frame = encoded[connection.protocol().ordinal()];
+            // Connections that registered after the message was encoded do not receive it
+            if (frame == null || connection.handle() == excludeHandle
+                || (presence && !connection.receivesPresence())) {
+                continue;
+            }
+            try {
+                connection.sendShared(frame, compressed[connection.protocol().ordinal()], presence);
+            } catch (Exception e) {
+                logger.warn("Failed to send message to connection {}", connection.id(), e);
+            }
+        }
+    }
+
+    private static ByteBuf[] retainAll(ByteBuf[] encoded) {
+        ByteBuf[] retained = new ByteBuf[encoded.length];
+        for (int i = 0; i < encoded.length; i++) {
+            if (encoded[i] != null) {
+                retained[i] = encoded[i].retainedDuplicate();
+            }
+        }
+        return retained;
+    }
+
+    private static void releaseAll(ByteBuf[] encoded) {
+        for (ByteBuf buf : encoded) {
+            if (buf != null) {
+                buf.release();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface GroupLookup {
+        List<ClientConnection> group(Context context);
+    }
+}
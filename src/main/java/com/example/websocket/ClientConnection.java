@@ -0,0 +1,487 @@
+package com.example.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.http.WebSocketFrameType;
+import io.vertx.core.http.impl.WebSocketImplBase;
+import io.vertx.core.http.impl.ws.WebSocketFrameImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A connected client: its id and interned handle, the protocol it negotiated, its socket and
+ * the event-loop context that owns the socket.
+ *
+ * <p>Outbound frames are written straight to the socket while it keeps up. Once the socket's
+ * write queue is full they wait in a bounded backlog that drains as the socket becomes
+ * writable again; when the backlog itself is full the configured {@link SlowConsumerPolicy}
+ * decides what gives. The backlog is only touched on {@link #context()}, so sends from other
+ * threads are handed over to it.
+ *
+ * <p>When the client negotiated permessage-deflate, every data frame is written past Netty's
+ * deflate encoder: large enough messages go out already compressed by the
+ * {@link FrameCompressor}, the rest uncompressed. The encoder therefore never builds up a
+ * compression context, which is what lets one compressed broadcast be shared by all
+ * recipients. The handshake must have been accepted before the connection is created.
+ *
+ * <p>With write coalescing on, frames are written to the channel without a flush, and one
+ * flush is queued behind whatever the event loop is running, or issued right away once the
+ * unflushed bytes pass the threshold. A client that receives a broadcast, presence and a reply
+ * in the same turn then costs one socket write instead of three. JSON clients that opt in also
+ * get the messages of one turn packed into a single frame holding a JSON array.
+ */
+public class ClientConnection implements Peer {
+    private static final Logger logger = LoggerFactory.getLogger(ClientConnection.class);
+    private static final short SLOW_CONSUMER_CLOSE_STATUS = 1008;
+    private static final byte[] ARRAY_START = {'['};
+    private static final byte[] ARRAY_SEPARATOR = {','};
+    private static final byte[] ARRAY_END = {']'};
+
+    private final String id;
+    private final int handle;
+    private final WireProtocol protocol;
+    private final MessageCodec codec;
+    private final ServerWebSocket socket;
+    private final Context context;
+    private final int backlogLimit;
+    private final SlowConsumerPolicy policy;
+    private final OutboundStats stats;
+    private final FrameCompressor compressor;
+    // Pipeline position of Netty's deflate encoder, or null when the client did not negotiate it
+    private final ChannelHandlerContext deflateEncoder;
+    private final int maxCompressedInput;
+    // Pipeline position of the Vert.x handler when writes are coalesced, otherwise null
+    private final ChannelHandlerContext coalescingChannel;
+    private final int flushThreshold;
+    private final ArrayDeque<Pending> backlog = new ArrayDeque<>();
+    private final Set<String> subscriptions = new HashSet<>();
+    // Payloads waiting to be packed into one JSON array frame at the next flush
+    private final List<ByteBuf> packed = new ArrayList<>();
+    private int packedBytes;
+    private int unflushedBytes;
+    private boolean flushScheduled;
+    private boolean receivesPresence = true;
+    private boolean packsMessages;
+    // Read by the heartbeat monitor's thread
+    private volatile long lastActivity = System.nanoTime();
+    private volatile Timeout idleCheck;
+    // Set while a blocking MessageHandler runs with the socket paused
+    private volatile boolean handlerRunning;
+    private volatile boolean closed;
+    // Rate limit buckets, only touched on the owning context
+    private final long[] rateLimitState = RateLimiter.newConnectionState();
+    // Position in the registry's group for the owning context, or -1 outside it
+    private int groupIndex = -1;
+
+    public ClientConnection(String id, int handle, WireProtocol protocol, MessageCodec codec, ServerWebSocket socket,
+                            Context context, ServerOptions options, OutboundStats stats, FrameCompressor compressor) {
+        this.id = id;
+        this.handle = handle;
+        this.protocol = protocol;
+        this.codec = codec;
+        this.socket = socket;
+        this.context = context;
+        this.backlogLimit = options.getOutboundQueueLimit();
+        this.policy = options.getSlowConsumerPolicy();
+        this.stats = stats;
+        this.compressor = compressor;
+        this.deflateEncoder = deflateEncoder(socket);
+        this.maxCompressedInput = deflateEncoder != null
+            ? FrameCompressor.maxInput(socket.headers().get(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS))
+            : 0;
+        this.coalescingChannel = options.isWriteCoalescingEnabled() ? channel(socket) : null;
+        this.flushThreshold = options.getWriteFlushThreshold();
+        socket.drainHandler(v -> drain());
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public int handle() {
+        return handle;
+    }
+
+    public WireProtocol protocol() {
+        return protocol;
+    }
+
+    public MessageCodec codec() {
+        return codec;
+    }
+
+    public ServerWebSocket socket() {
+        return socket;
+    }
+
+    public Context context() {
+        return context;
+    }
+
+    // Topic patterns this connection subscribed to; only touched on the owning context
+    public Set<String> subscriptions() {
+        return subscriptions;
+    }
+
+    // Whether the client wants presence events; set before the connection is registered
+    public boolean receivesPresence() {
+        return receivesPresence;
+    }
+
+    public void setReceivesPresence(boolean receivesPresence) {
+        this.receivesPresence = receivesPresence;
+    }
+
+    // Whether several messages may go out as one JSON array frame; only JSON clients that asked
+    // for it and only with write coalescing on. Set before the connection is registered.
+    public boolean packsMessages() {
+        return packsMessages;
+    }
+
+    public void setPacksMessages(boolean packsMessages) {
+        this.packsMessages = packsMessages && coalescingChannel != null && protocol == WireProtocol.JSON;
+    }
+
+    // Whether the client negotiated permessage-deflate
+    public boolean compresses() {
+        return deflateEncoder != null;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    int groupIndex() {
+        return groupIndex;
+    }
+
+    void groupIndex(int groupIndex) {
+        this.groupIndex = groupIndex;
+    }
+
+    long[] rateLimitState() {
+        return rateLimitState;
+    }
+
+    // Records inbound traffic, which proves the client is alive
+    public void touch() {
+        lastActivity = System.nanoTime();
+    }
+
+    public long lastActivity() {
+        return lastActivity;
+    }
+
+    // Pongs cannot be read while the socket is paused for a handler, so the heartbeat leaves the
+    // connection alone until the handler is done
+    public boolean isHandlerRunning() {
+        return handlerRunning;
+    }
+
+    void setHandlerRunning(boolean handlerRunning) {
+        this.handlerRunning = handlerRunning;
+    }
+
+    // The pending heartbeat check, cancelled when the connection closes
+    void idleCheck(Timeout idleCheck) {
+        this.idleCheck = idleCheck;
+        if (closed) {
+            idleCheck.cancel();
+        }
+    }
+
+    // Asks the client to prove it is alive; a live client answers with a pong
+    public void ping() {
+        if (!closed) {
+            socket.writePing(Buffer.buffer());
+        }
+    }
+
+    public int backlogDepth() {
+        return backlog.size();
+    }
+
+    // Sends a message encoded by this connection's codec, taking ownership of the buffer
+    public void send(ByteBuf encoded) {
+        enqueue(encoded, null, false);
+    }
+
+    // Writes a frame backed by a shared, already-encoded buffer, and its shared compressed form
+    // if there is one. The frame takes its own reference, which Netty releases once the bytes
+    // are on the wire.
+    public void sendShared(ByteBuf encoded, ByteBuf compressed, boolean presence) {
+        enqueue(encoded.retainedDuplicate(), compressed != null ? compressed.retainedDuplicate() : null, presence);
+    }
+
+    private void enqueue(ByteBuf payload, ByteBuf compressed, boolean presence) {
+        if (Vertx.currentContext() != context) {
+            context.runOnContext(v -> enqueue(payload, compressed, presence));
+            return;
+        }
+        if (closed) {
+            payload.release();
+            ReferenceCountUtil.release(compressed);
+            return;
+        }
+        if (packsMessages && backlog.isEmpty() && !socket.writeQueueFull()) {
+            // Packed frames are compressed as a whole, so a shared compressed form is no use
+            ReferenceCountUtil.release(compressed);
+            pack(payload);
+            return;
+        }
+        Object frame = frame(payload, compressed);
+        if (backlog.isEmpty() && !socket.writeQueueFull()) {
+            write(frame);
+            return;
+        }
+        if (backlog.size() >= backlogLimit && !makeRoom(frame)) {
+            return;
+        }
+        backlog.addLast(new Pending(frame, presence));
+        stats.queued(1);
+    }
+
+    // Applies the slow consumer policy; returns false if the new frame must not be queued
+    private boolean makeRoom(Object frame) {
+        switch (policy) {
+            case DROP_NEWEST:
+                ReferenceCountUtil.release(frame);
+                stats.dropped();
+                return false;
+            case DROP_OLDEST_PRESENCE:
+                if (dropOldestPresence()) {
+                    return true;
+                }
+                dropOldest();
+                return true;
+            case DISCONNECT:
+                ReferenceCountUtil.release(frame);
+                logger.warn("Disconnecting slow consumer {} with {} frames queued", id, backlog.size());
+                stats.disconnected();
+                onClosed();
+                socket.close(SLOW_CONSUMER_CLOSE_STATUS, "Slow consumer");
+                return false;
+            case DROP_OLDEST:
+            default:
+                dropOldest();
+                return true;
+        }
+    }
+
+    private void dropOldest() {
+        Pending oldest = backlog.pollFirst();
+        if (oldest != null) {
+            ReferenceCountUtil.release(oldest.frame);
+            stats.queued(-1);
+            stats.dropped();
+        }
+    }
+
+    private boolean dropOldestPresence() {
+        Iterator<Pending> it = backlog.iterator();
+        while (it.hasNext()) {
+            Pending pending = it.next();
+            if (pending.presence) {
+                it.remove();
+                ReferenceCountUtil.release(pending.frame);
+                stats.queued(-1);
+                stats.dropped();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        writePacked();
+        while (!backlog.isEmpty() && !socket.writeQueueFull()) {
+            write(backlog.pollFirst().frame);
+            stats.queued(-1);
+        }
+    }
+
+    // Takes ownership of both buffers and returns the frame to write: a Vert.x frame for plain
+    // connections, a Netty frame for ones that negotiated permessage-deflate
+    private Object frame(ByteBuf payload, ByteBuf compressed) {
+        if (deflateEncoder == null) {
+            ReferenceCountUtil.release(compressed);
+            return coalescingChannel != null
+                ? nettyFrame(payload, 0)
+                : new WebSocketFrameImpl(protocol.frameType(), payload, true);
+        }
+        int length = payload.readableBytes();
+        if (length > maxCompressedInput) {
+            ReferenceCountUtil.release(compressed);
+            compressed = null;
+        } else if (compressed == null) {
+            compressed = compressor.compress(payload);
+        }
+        if (compressed == null) {
+            return nettyFrame(payload, 0);
+        }
+        stats.compressed(length - compressed.readableBytes());
+        payload.release();
+        return nettyFrame(compressed, WebSocketExtension.RSV1);
+    }
+
+    private WebSocketFrame nettyFrame(ByteBuf payload, int rsv) {
+        return protocol.frameType() == WebSocketFrameType.TEXT
+            ? new TextWebSocketFrame(true, rsv, payload)
+            : new BinaryWebSocketFrame(true, rsv, payload);
+    }
+
+    private void write(Object frame) {
+        if (frame instanceof WebSocketFrameImpl) {
+            WebSocketFrameImpl vertxFrame = (WebSocketFrameImpl) frame;
+            stats.written(vertxFrame.length());
+            socket.writeFrame(vertxFrame);
+        } else {
+            WebSocketFrame nettyFrame = (WebSocketFrame) frame;
+            int length = nettyFrame.content().readableBytes();
+            stats.written(length);
+            // Writing from the encoder's own context starts below it in the pipeline
+            ChannelHandlerContext target = deflateEncoder != null ? deflateEncoder : coalescingChannel;
+            if (coalescingChannel == null) {
+                target.writeAndFlush(nettyFrame);
+                return;
+            }
+            target.write(nettyFrame);
+            unflushedBytes += length;
+            if (unflushedBytes >= flushThreshold) {
+                flush();
+            } else {
+                scheduleFlush();
+            }
+        }
+    }
+
+    private void pack(ByteBuf payload) {
+        packed.add(payload);
+        packedBytes += payload.readableBytes();
+        if (packedBytes >= flushThreshold) {
+            flush();
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    // Writes the packed payloads as one frame: a single message as it is, several as a JSON array
+    private void writePacked() {
+        if (packed.isEmpty()) {
+            return;
+        }
+        ByteBuf payload;
+        if (packed.size() == 1) {
+            payload = packed.get(0);
+        } else {
+            CompositeByteBuf array = Unpooled.compositeBuffer(2 * packed.size() + 1);
+            array.addComponent(true, Unpooled.wrappedBuffer(ARRAY_START));
+            for (int i = 0; i < packed.size(); i++) {
+                if (i > 0) {
+                    array.addComponent(true, Unpooled.wrappedBuffer(ARRAY_SEPARATOR));
+                }
+                array.addComponent(true, packed.get(i));
+            }
+            array.addComponent(true, Unpooled.wrappedBuffer(ARRAY_END));
+            payload = array;
+        }
+        packed.clear();
+        packedBytes = 0;
+        write(frame(payload, null));
+    }
+
+    // Runs after the tasks already queued on the event loop, so everything they send shares it
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            coalescingChannel.executor().execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        flushScheduled = false;
+        if (closed) {
+            return;
+        }
+        writePacked();
+        if (unflushedBytes > 0) {
+            unflushedBytes = 0;
+            coalescingChannel.flush();
+        }
+    }
+
+    // Called once the socket is gone; releases anything still waiting in the backlog
+    public void onClosed() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Timeout check = idleCheck;
+        if (check != null) {
+            check.cancel();
+        }
+        stats.queued(-backlog.size());
+        backlog.forEach(pending -> ReferenceCountUtil.release(pending.frame));
+        backlog.clear();
+        packed.forEach(ReferenceCountUtil::release);
+        packed.clear();
+    }
+
+    public void close() {
+        socket.close();
+    }
+
+    private static ChannelHandlerContext channel(ServerWebSocket socket) {
+        return socket instanceof WebSocketImplBase ? ((WebSocketImplBase<?>) socket).channelHandlerContext() : null;
+    }
+
+    // Finds the deflate encoder that the accepted handshake installed, if any
+    private static ChannelHandlerContext deflateEncoder(ServerWebSocket socket) {
+        if (!(socket instanceof WebSocketImplBase)) {
+            return null;
+        }
+        ChannelPipeline pipeline = ((WebSocketImplBase<?>) socket).channelHandlerContext().pipeline();
+        for (Map.Entry<String, ChannelHandler> entry : pipeline) {
+            if (entry.getValue() instanceof WebSocketExtensionEncoder) {
+                return pipeline.context(entry.getValue());
+            }
+        }
+        return null;
+    }
+
+    private static final class Pending {
+        final Object frame;
+        final boolean presence;
+
+        Pending(Object frame, boolean presence) {
+            this.frame = frame;
+            this.presence = presence;
+        }
+    }
+}
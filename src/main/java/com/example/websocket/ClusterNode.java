@@ -0,0 +1,263 @@
+package com.example.websocket;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This server's membership in a cluster of nodes behind a load balancer. It keeps a presence
+ * directory of connections held by other nodes and forwards broadcasts and private messages
+ * over a pluggable {@link ClusterTransport}.
+ *
+ * <p>Nodes announce joins and leaves as they happen, ask for a snapshot of every other node's
+ * connections when they start, and heartbeat so that a node which disappears without saying
+ * goodbye has its connections dropped from the directory.
+ */
+public class ClusterNode {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterNode.class);
+    private static final long HEARTBEAT_INTERVAL_MS = 5000;
+    private static final long NODE_EXPIRY_MS = 3 * HEARTBEAT_INTERVAL_MS;
+
+    private final String nodeId;
+    private final ClusterTransport transport;
+    private final ConnectionRegistry registry;
+    private final BroadcastEngine broadcastEngine;
+    private final TopicRegistry topics;
+    private final MessageHistory history;
+    private final SessionStore sessions;
+    private final PresenceAggregator presence;
+    private final Map<String, RemotePeer> peersById = new ConcurrentHashMap<>();
+    private final Map<Integer, RemotePeer> peersByHandle = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastHeard = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private Vertx vertx;
+    private long heartbeatTimer = -1;
+
+    public ClusterNode(String nodeId, ClusterTransport transport, ConnectionRegistry registry,
+                       BroadcastEngine broadcastEngine, TopicRegistry topics, MessageHistory history,
+                       SessionStore sessions, PresenceAggregator presence) {
+        this.nodeId = nodeId != null ? nodeId : UUID.randomUUID().toString();
+        this.transport = transport;
+        this.registry = registry;
+        this.broadcastEngine = broadcastEngine;
+        this.topics = topics;
+        this.history = history;
+        this.sessions = sessions;
+        this.presence = presence;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public Future<Void> start(Vertx vertx) {
+        this.vertx = vertx;
+        return transport.start(nodeId, this::onMessage).onSuccess(v -> {
+            publish("sync");
+            heartbeatTimer = vertx.setPeriodic(HEARTBEAT_INTERVAL_MS, id -> {
+                publish("heartbeat");
+                expireSilentNodes();
+            });
+            logger.info("Cluster node {} started", nodeId);
+        });
+    }
+
+    // Tells the other nodes this one is leaving, so they drop its connections at once rather
+    // than after the heartbeat expiry. Only the first call has any effect.
+    public Future<Void> close() {
+        if (!closed.compareAndSet(false, true)) {
+            return Future.succeededFuture();
+        }
+        if (vertx != null && heartbeatTimer >= 0) {
+            vertx.cancelTimer(heartbeatTimer);
+        }
+        publish("node_down");
+        return transport.close();
+    }
+
+    public int remoteConnections() {
+        return peersById.size();
+    }
+
+    public RemotePeer peer(String connectionId) {
+        return peersById.get(connectionId);
+    }
+
+    public RemotePeer peer(int handle) {
+        return peersByHandle.get(handle);
+    }
+
+    public void localJoined(ClientConnection connection) {
+        transport.publish(message("join").put("id", connection.id()));
+    }
+
+    // Sent once a connection's session has ended, not when its socket closes
+    public void localLeft(Peer connection) {
+        transport.publish(message("leave").put("id", connection.id()));
+    }
+
+    public void broadcast(ClientConnection from, String text) {
+        transport.publish(message("broadcast").put("from", from.id()).put("message", text));
+    }
+
+    // Every node delivers to its own subscribers, so topic messages go to all nodes
+    public void publish(ClientConnection from, String topic, String text) {
+        transport.publish(message("publish").put("from", from.id()).put("topic", topic).put("message", text));
+    }
+
+    public void sendPrivate(ClientConnection from, RemotePeer target, String text) {
+        transport.send(target.nodeId(), message("private")
+            .put("from", from.id())
+            .put("target", target.id())
+            .put("message", text));
+    }
+
+    private void onMessage(JsonObject msg) {
+        String node = msg.getString("node");
+        if (nodeId.equals(node)) {
+            return;
+        }
+        lastHeard.put(node, System.currentTimeMillis());
+
+        switch (msg.getString("op", "")) {
+            case "join":
+                RemotePeer joined = addPeer(msg.getString("id"), node);
+                presence.joined(joined, vertx);
+                break;
+            case "leave":
+                RemotePeer left = removePeer(msg.getString("id"));
+                if (left != null) {
+                    presence.left(left, vertx);
+                }
+                break;
+            case "broadcast":
+                Peer from = peerOrPlaceholder(msg.getString("from"), node);
+                String text = msg.getString("message", "");
+                // Each node records what its own clients were sent
+                long timestamp = System.currentTimeMillis();
+                long seq = history.append(MessageType.BROADCAST, from.id(), null, text, timestamp);
+                broadcastEngine.broadcast(codec -> codec.broadcast(from, text, seq, timestamp),
+                    ConnectionRegistry.NO_HANDLE, false);
+                break;
+            case "publish":
+                Peer publisher = peerOrPlaceholder(msg.getString("from"), node);
+                String topic = msg.getString("topic");
+                String published = msg.getString("message", "");
+                broadcastEngine.broadcast(topics.subscribers(topic),
+                    codec -> codec.topicMessage(topic, publisher, published), ConnectionRegistry.NO_HANDLE, false);
+                break;
+            case "private":
+                deliverPrivate(msg, node);
+                break;
+            case "undeliverable":
+                ClientConnection sender = registry.get(msg.getString("from"));
+                if (sender != null) {
+                    sender.send(sender.codec().error("Target connection not found: " + msg.getString("target")));
+                }
+                break;
+            case "sync":
+                JsonArray ids = new JsonArray();
+                registry.all().forEach(connection -> ids.add(connection.id()));
+                transport.send(node, message("snapshot").put("ids", ids));
+                break;
+            case "snapshot":
+                msg.getJsonArray("ids", new JsonArray()).forEach(id -> addPeer((String) id, node));
+                break;
+            case "node_down":
+                removeNode(node);
+                break;
+            case "heartbeat":
+            default:
+                break;
+        }
+    }
+
+    private void deliverPrivate(JsonObject msg, String node) {
+        String targetId = msg.getString("target");
+        ClientConnection target = registry.get(targetId);
+        if (target == null && history.isEnabled() && sessions.detached(targetId) != null) {
+            // Held for a client that is away; it gets the message when it replays after resuming
+            Peer from = peerOrPlaceholder(msg.getString("from"), node);
+            history.append(MessageType.PRIVATE, from.id(), targetId, msg.getString("message", ""),
+                System.currentTimeMillis());
+            return;
+        }
+        if (target == null) {
+            transport.send(node, message("undeliverable")
+                .put("from", msg.getString("from"))
+                .put("target", targetId));
+            return;
+        }
+        Peer from = peerOrPlaceholder(msg.getString("from"), node);
+        String text = msg.getString("message", "");
+        long timestamp = System.currentTimeMillis();
+        long seq = history.append(MessageType.PRIVATE, from.id(), targetId, text, timestamp);
+        target.send(target.codec().privateMessage(from, text, seq, timestamp));
+    }
+
+    private RemotePeer addPeer(String connectionId, String node) {
+        return peersById.computeIfAbsent(connectionId, id -> {
+            RemotePeer peer = new RemotePeer(id, registry.allocateHandle(), node);
+            peersByHandle.put(peer.handle(), peer);
+            return peer;
+        });
+    }
+
+    private RemotePeer removePeer(String connectionId) {
+        RemotePeer peer = peersById.remove(connectionId);
+        if (peer != null) {
+            peersByHandle.remove(peer.handle());
+            registry.releaseHandle(peer.handle());
+        }
+        return peer;
+    }
+
+    // A message can arrive before the join that announced its sender
+    private Peer peerOrPlaceholder(String connectionId, String node) {
+        RemotePeer peer = peersById.get(connectionId);
+        return peer != null ? peer : new RemotePeer(connectionId, 0, node);
+    }
+
+    private void expireSilentNodes() {
+        long cutoff = System.currentTimeMillis() - NODE_EXPIRY_MS;
+        Iterator<Map.Entry<String, Long>> it = lastHeard.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getValue() < cutoff) {
+                logger.warn("Cluster node {} stopped heartbeating, dropping its connections", entry.getKey());
+                it.remove();
+                removeNode(entry.getKey());
+            }
+        }
+    }
+
+    private void removeNode(String node) {
+        lastHeard.remove(node);
+        peersById.values().removeIf(peer -> {
+            if (!peer.nodeId().equals(node)) {
+                return false;
+            }
+            peersByHandle.remove(peer.handle());
+            registry.releaseHandle(peer.handle());
+            presence.left(peer, vertx);
+            return true;
+        });
+    }
+
+    private void publish(String op) {
+        transport.publish(message(op));
+    }
+
+    private JsonObject message(String op) {
+        return new JsonObject().put("op", op).put("node", nodeId);
+    }
+}
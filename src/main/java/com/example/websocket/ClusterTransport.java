@@ -0,0 +1,20 @@
+package com.example.websocket;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Moves {@link ClusterNode} messages between server nodes. Implementations only need two
+ * primitives: publish to every node and send to one node.
+ */
+public interface ClusterTransport {
+    // Starts delivering messages published to all nodes or sent to this node
+    Future<Void> start(String nodeId, Handler<JsonObject> handler);
+
+    void publish(JsonObject message);
+
+    void send(String nodeId, JsonObject message);
+
+    Future<Void> close();
+}
@@ -0,0 +1,252 @@
+package com.example.websocket;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Connections shared by every {@link WebSocketServer} instance deployed in the same Vert.x
+ * instance. A connection is known by a small integer handle, which indexes a slot table
+ * directly, and by a short string id that clients and other cluster nodes use as its alias.
+ * Connections are also grouped by owning context in dense arrays, so a broadcast hands each
+ * event loop its own recipients and walks them without hashing or regrouping.
+ *
+ * <p>Handles are reused so the slot table stays as small as the number of identities alive at
+ * once. A handle is freed only when its session ends, not when its socket closes, and is handed
+ * out again only after {@value #REUSE_DELAY} others have been freed since, so clients have long
+ * learned of the leave before the handle names someone else. Ids are never reused.
+ */
+public class ConnectionRegistry {
+    // Handle 0 is never allocated and stands for no connection
+    public static final int NO_HANDLE = 0;
+    static final int REUSE_DELAY = 1024;
+    private static final int INITIAL_SLOTS = 1024;
+    // A power of two, and more than REUSE_DELAY so the ring rarely grows
+    private static final int INITIAL_FREE_HANDLES = 2048;
+    private static final int ID_PREFIX_LENGTH = 6;
+
+    // Written under the registry's lock, read without it
+    private volatile AtomicReferenceArray<ClientConnection> slots = new AtomicReferenceArray<>(INITIAL_SLOTS);
+    private final Map<String, ClientConnection> byId = new ConcurrentHashMap<>();
+    private final Map<Context, Group> byContext = new ConcurrentHashMap<>();
+    // Freed handles, oldest first, in a ring of unboxed ints; guarded by the registry's lock
+    private int[] freeHandles = new int[INITIAL_FREE_HANDLES];
+    private int freeHead;
+    private int freeCount;
+    private int nextHandle = 1;
+    // Distinguishes this node's ids from those of other nodes and earlier runs
+    private final String idPrefix = randomPrefix();
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicIntegerArray protocolCounts = new AtomicIntegerArray(WireProtocol.values().length);
+    private final AtomicIntegerArray compressingCounts = new AtomicIntegerArray(WireProtocol.values().length);
+
+    // A new id such as "k3f9z2.1b", a fraction of the size of a UUID
+    public String allocateId() {
+        return idPrefix + '.' + Long.toString(nextId.incrementAndGet(), Character.MAX_RADIX);
+    }
+
+    public synchronized int allocateHandle() {
+        if (freeCount > REUSE_DELAY) {
+            int handle = freeHandles[freeHead];
+            freeHead = (freeHead + 1) & (freeHandles.length - 1);
+            freeCount--;
+            return handle;
+        }
+        return nextHandle++;
+    }
+
+    // Frees the handle of a session that has ended or a remote connection that has gone
+    public synchronized void releaseHandle(int handle) {
+        if (handle == NO_HANDLE) {
+            return;
+        }
+        AtomicReferenceArray<ClientConnection> table = slots;
+        if (handle < table.length()) {
+            table.set(handle, null);
+        }
+        if (freeCount == freeHandles.length) {
+            growFreeHandles();
+        }
+        freeHandles[(freeHead + freeCount) & (freeHandles.length - 1)] = handle;
+        freeCount++;
+    }
+
+    public void register(ClientConnection connection) {
+        synchronized (this) {
+            AtomicReferenceArray<ClientConnection> table = slots;
+            if (connection.handle() >= table.length()) {
+                table = grow(table, connection.handle());
+            }
+            table.set(connection.handle(), connection);
+        }
+        byId.put(connection.id(), connection);
+        protocolCounts.incrementAndGet(connection.protocol().ordinal());
+        if (connection.compresses()) {
+            compressingCounts.incrementAndGet(connection.protocol().ordinal());
+        }
+        Group group = byContext.computeIfAbsent(connection.context(), c -> new Group());
+        onContext(connection, () -> group.addMember(connection));
+    }
+
+    public boolean unregister(ClientConnection connection) {
+        Group group = byContext.get(connection.context());
+        if (group != null) {
+            onContext(connection, () -> group.removeMember(connection));
+        }
+        synchronized (this) {
+            AtomicReferenceArray<ClientConnection> table = slots;
+            if (connection.handle() < table.length()) {
+                table.compareAndSet(connection.handle(), connection, null);
+            }
+        }
+        boolean removed = byId.remove(connection.id(), connection);
+        if (removed) {
+            protocolCounts.decrementAndGet(connection.protocol().ordinal());
+            if (connection.compresses()) {
+                compressingCounts.decrementAndGet(connection.protocol().ordinal());
+            }
+        }
+        return removed;
+    }
+
+    public ClientConnection get(String connectionId) {
+        return byId.get(connectionId);
+    }
+
+    public ClientConnection getByHandle(int handle) {
+        AtomicReferenceArray<ClientConnection> table = slots;
+        return handle > NO_HANDLE && handle < table.length() ? table.get(handle) : null;
+    }
+
+    public boolean hasConnections(WireProtocol protocol) {
+        return protocolCounts.get(protocol.ordinal()) > 0;
+    }
+
+    public int connections(WireProtocol protocol) {
+        return protocolCounts.get(protocol.ordinal());
+    }
+
+    // Whether any connection speaking this protocol negotiated permessage-deflate
+    public boolean hasCompressingConnections(WireProtocol protocol) {
+        return compressingCounts.get(protocol.ordinal()) > 0;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public Collection<ClientConnection> all() {
+        return byId.values();
+    }
+
+    public Set<Context> contexts() {
+        return byContext.keySet();
+    }
+
+    // The connections an event loop owns; only that event loop may iterate them
+    public List<ClientConnection> ownedBy(Context context) {
+        Group group = byContext.get(context);
+        return group != null ? group : Collections.emptyList();
+    }
+
+    private AtomicReferenceArray<ClientConnection> grow(AtomicReferenceArray<ClientConnection> table, int handle) {
+        int length = table.length();
+        while (length <= handle) {
+            length <<= 1;
+        }
+        AtomicReferenceArray<ClientConnection> grown = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < table.length(); i++) {
+            grown.set(i, table.get(i));
+        }
+        slots = grown;
+        return grown;
+    }
+
+    // Unrolls the ring into a twice as large array, keeping the oldest handle first
+    private void growFreeHandles() {
+        int[] grown = new int[freeHandles.length * 2];
+        for (int i = 0; i < freeCount; i++) {
+            grown[i] = freeHandles[(freeHead + i) & (freeHandles.length - 1)];
+        }
+        freeHandles = grown;
+        freeHead = 0;
+    }
+
+    // Groups are only changed by their own event loop, so iterating one there needs no lock.
+    // A connection taken over from another event loop leaves its group a moment later.
+    private static void onContext(ClientConnection connection, Runnable change) {
+        if (Vertx.currentContext() == connection.context()) {
+            change.run();
+        } else {
+            connection.context().runOnContext(v -> change.run());
+        }
+    }
+
+    private static String randomPrefix() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder prefix = new StringBuilder(ID_PREFIX_LENGTH);
+        for (int i = 0; i < ID_PREFIX_LENGTH; i++) {
+            prefix.append(Character.forDigit(random.nextInt(Character.MAX_RADIX), Character.MAX_RADIX));
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * The connections of one event loop, packed at the front of an array. Removal moves the
+     * last connection into the gap, so every connection records its own position.
+     */
+    private static final class Group extends AbstractList<ClientConnection> implements RandomAccess {
+        private ClientConnection[] members = new ClientConnection[16];
+        // Read by the metrics gauge from other threads
+        private volatile int size;
+
+        void addMember(ClientConnection connection) {
+            if (connection.groupIndex() >= 0) {
+                return;
+            }
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            members[size] = connection;
+            connection.groupIndex(size);
+            size++;
+        }
+
+        void removeMember(ClientConnection connection) {
+            int index = connection.groupIndex();
+            if (index < 0 || members[index] != connection) {
+                return;
+            }
+            int last = size - 1;
+            ClientConnection moved = members[last];
+            members[index] = moved;
+            moved.groupIndex(index);
+            members[last] = null;
+            connection.groupIndex(-1);
+            size = last;
+        }
+
+        @Override
+        public ClientConnection get(int index) {
+            return members[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.websocket;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Cluster transport over the Vert.x event bus. Nodes only see each other when Vert.x itself is
+ * clustered, which requires a cluster manager (e.g. vertx-hazelcast) on the classpath.
+ */
+public class EventBusClusterTransport implements ClusterTransport {
+    private static final String ALL_NODES_ADDRESS = "websocket.cluster";
+    private static final String NODE_ADDRESS_PREFIX = "websocket.cluster.node.";
+
+    private final Vertx vertx;
+    private MessageConsumer<JsonObject> allNodesConsumer;
+    private MessageConsumer<JsonObject> nodeConsumer;
+
+    public EventBusClusterTransport(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    public Future<Void> start(String nodeId, Handler<JsonObject> handler) {
+        allNodesConsumer = vertx.eventBus().consumer(ALL_NODES_ADDRESS, message -> handler.handle(message.body()));
+        nodeConsumer = vertx.eventBus().consumer(NODE_ADDRESS_PREFIX + nodeId, message -> handler.handle(message.body()));
+        // Registration only takes time when the event bus is clustered
+        Promise<Void> allNodesRegistered = Promise.promise();
+        Promise<Void> nodeRegistered = Promise.promise();
+        allNodesConsumer.completionHandler(allNodesRegistered);
+        nodeConsumer.completionHandler(nodeRegistered);
+        return Future.all(allNodesRegistered.future(), nodeRegistered.future()).mapEmpty();
+    }
+
+    @Override
+    public void publish(JsonObject message) {
+        vertx.eventBus().publish(ALL_NODES_ADDRESS, message);
+    }
+
+    @Override
+    public void send(String nodeId, JsonObject message) {
+        vertx.eventBus().send(NODE_ADDRESS_PREFIX + nodeId, message);
+    }
+
+    @Override
+    public Future<Void> close() {
+        if (allNodesConsumer == null) {
+            return Future.succeededFuture();
+        }
+        return Future.all(allNodesConsumer.unregister(), nodeConsumer.unregister()).mapEmpty();
+    }
+}
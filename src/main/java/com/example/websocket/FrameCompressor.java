@@ -0,0 +1,93 @@
+package com.example.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses outbound messages for connections that negotiated permessage-deflate (RFC 7692).
+ *
+ * <p>Every message is deflated on its own, with no context carried over from earlier
+ * messages, so the result is valid for any client regardless of the context takeover it
+ * negotiated. That lets a broadcast be compressed once and the same bytes be written to every
+ * compressing recipient. Messages below the minimum size, or that would not shrink, are sent
+ * uncompressed.
+ */
+public class FrameCompressor {
+    // SYNC_FLUSH ends every message with an empty stored block, 00 00 ff ff, which the
+    // extension strips on the wire and the receiver appends again before inflating
+    private static final int FLUSH_TRAILER_BYTES = 4;
+    private static final int MAX_WINDOW_BITS = 15;
+    private static final String EXTENSION_NAME = "permessage-deflate";
+    private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+
+    private final int minSize;
+    private final ThreadLocal<Deflater> deflaters;
+
+    public FrameCompressor(ServerOptions options) {
+        this.minSize = options.getCompressionMinSize();
+        int level = options.getCompressionLevel();
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+    }
+
+    // Returns the compressed payload, or null if the message should go out uncompressed.
+    // The payload's reader index is left untouched.
+    public ByteBuf compress(ByteBuf payload) {
+        int length = payload.readableBytes();
+        if (length < minSize) {
+            return null;
+        }
+        Deflater deflater = deflaters.get();
+        // Output that fills the input's size is not worth sending compressed
+        ByteBuf out = Unpooled.buffer(length, length);
+        try {
+            deflater.setInput(payload.nioBuffer());
+            while (out.isWritable()) {
+                ByteBuffer target = out.nioBuffer(out.writerIndex(), out.writableBytes());
+                int written = deflater.deflate(target, Deflater.SYNC_FLUSH);
+                out.writerIndex(out.writerIndex() + written);
+                if (out.isWritable()) {
+                    out.writerIndex(out.writerIndex() - FLUSH_TRAILER_BYTES);
+                    return out;
+                }
+            }
+            out.release();
+            return null;
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    // Largest message this server may compress for a client with the given extension offers.
+    // The JDK deflater always uses a 32 KiB window, but a message no longer than the window
+    // the client asked for can never refer back further than that. Any offer may be the one
+    // accepted, so the smallest window wins.
+    static int maxInput(String extensionsHeader) {
+        int maxInput = Integer.MAX_VALUE;
+        if (extensionsHeader == null) {
+            return maxInput;
+        }
+        for (String offer : extensionsHeader.split(",")) {
+            String[] params = offer.split(";");
+            if (!EXTENSION_NAME.equals(params[0].trim())) {
+                continue;
+            }
+            for (int i = 1; i < params.length; i++) {
+                String[] param = params[i].trim().split("=", 2);
+                if (param.length == 2 && SERVER_MAX_WINDOW_BITS.equals(param[0].trim())) {
+                    try {
+                        int bits = Integer.parseInt(param[1].trim().replace("\"", ""));
+                        if (bits < MAX_WINDOW_BITS) {
+                            maxInput = Math.min(maxInput, 1 << Math.max(bits, 0));
+                        }
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return maxInput;
+    }
+}
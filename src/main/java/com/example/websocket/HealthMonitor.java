@@ -0,0 +1,176 @@
+package com.example.websocket;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Health, readiness and connection stats, published as immutable snapshots. A timer on the
+ * management event loop builds a snapshot from counters that can be read from any thread, and
+ * requests just send the last one, so a probe never iterates connections or waits on a busy
+ * server event loop.
+ *
+ * <p>The same timer measures how far behind each server event loop is by posting a task to it
+ * and timing how long the task takes to run. A loop whose task has not run yet counts as late by
+ * the time since it was posted, so a stuck loop shows up at once. The server is ready once it is
+ * serving and while no loop is further behind than the configured limit.
+ */
+public class HealthMonitor {
+    private final ServerResources resources;
+    private final long maxLagNanos;
+    private final Map<Context, Probe> probes = new ConcurrentHashMap<>();
+    private volatile boolean serving;
+    private volatile Snapshot snapshot;
+
+    public HealthMonitor(ServerResources resources, ServerOptions options) {
+        this.resources = resources;
+        this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(options.getManagementMaxEventLoopLagMs());
+        this.snapshot = build(System.nanoTime());
+    }
+
+    // Measures the lag of a server event loop from now on
+    public void watch(Context context, String name) {
+        probes.put(context, new Probe(context, name));
+    }
+
+    public void unwatch(Context context) {
+        probes.remove(context);
+    }
+
+    // Whether the server accepts connections; it is not ready while false
+    public void setServing(boolean serving) {
+        this.serving = serving;
+    }
+
+    // Starts publishing on the given Vert.x instance, whose event loop should not serve clients
+    public void start(Vertx vertx, long intervalMs) {
+        vertx.setPeriodic(intervalMs, id -> publish());
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    private void publish() {
+        long now = System.nanoTime();
+        probes.values().forEach(probe -> probe.send(now));
+        snapshot = build(now);
+    }
+
+    private Snapshot build(long now) {
+        ConnectionRegistry registry = resources.registry();
+        ClusterNode cluster = resources.cluster();
+        String timestamp = TimestampService.isoNow();
+
+        JsonObject health = new JsonObject()
+            .put("status", "UP")
+            .put("timestamp", timestamp)
+            .put("activeConnections", registry.size())
+            .put("outbound", resources.outboundStats().toJson());
+        if (cluster != null) {
+            health.put("clusterNodeId", cluster.nodeId())
+                .put("clusterConnections", resources.totalConnections());
+        }
+
+        long worstLag = 0;
+        JsonArray eventLoops = new JsonArray();
+        for (Probe probe : probes.values()) {
+            long lag = probe.lag(now);
+            worstLag = Math.max(worstLag, lag);
+            eventLoops.add(new JsonObject()
+                .put("name", probe.name)
+                .put("connections", registry.ownedBy(probe.context).size())
+                .put("lagMs", TimeUnit.NANOSECONDS.toMillis(lag)));
+        }
+        boolean ready = serving && worstLag <= maxLagNanos;
+        JsonObject readiness = new JsonObject()
+            .put("ready", ready)
+            .put("serving", serving)
+            .put("timestamp", timestamp)
+            .put("maxEventLoopLagMs", TimeUnit.NANOSECONDS.toMillis(worstLag));
+
+        JsonObject byProtocol = new JsonObject();
+        for (WireProtocol protocol : WireProtocol.values()) {
+            byProtocol.put(protocol.name().toLowerCase(), registry.connections(protocol));
+        }
+        JsonObject stats = new JsonObject()
+            .put("timestamp", timestamp)
+            .put("activeConnections", registry.size())
+            .put("byProtocol", byProtocol)
+            .put("detachedSessions", resources.sessions().detachedCount())
+            .put("totalConnections", resources.totalConnections())
+            .put("eventLoops", eventLoops);
+
+        return new Snapshot(health.toBuffer(), ready, readiness.toBuffer(), stats.toBuffer());
+    }
+
+    /**
+     * One published state. The buffers are encoded once and only read afterwards.
+     */
+    public static final class Snapshot {
+        private final Buffer health;
+        private final boolean ready;
+        private final Buffer readiness;
+        private final Buffer stats;
+
+        Snapshot(Buffer health, boolean ready, Buffer readiness, Buffer stats) {
+            this.health = health;
+            this.ready = ready;
+            this.readiness = readiness;
+            this.stats = stats;
+        }
+
+        public Buffer health() {
+            return health;
+        }
+
+        public boolean ready() {
+            return ready;
+        }
+
+        public Buffer readiness() {
+            return readiness;
+        }
+
+        public Buffer stats() {
+            return stats;
+        }
+    }
+
+    private static final class Probe {
+        private final Context context;
+        private final String name;
+        // Whether a probe task is waiting to run; nanoTime has no reserved value to mark this
+        private volatile boolean pending;
+        // When the pending probe task was posted; written before pending is set
+        private volatile long sentAt;
+        private volatile long lastLag;
+
+        Probe(Context context, String name) {
+            this.context = context;
+            this.name = name;
+        }
+
+        void send(long now) {
+            if (pending) {
+                return;
+            }
+            sentAt = now;
+            pending = true;
+            context.runOnContext(v -> {
+                lastLag = System.nanoTime() - now;
+                pending = false;
+            });
+        }
+
+        long lag(long now) {
+            return pending ? Math.max(lastLag, now - sentAt) : lastLag;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.websocket;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds dead peers. Every connection has one pending check on a shared hashed timer wheel, so
+ * watching 100k connections costs one timer thread and an O(1) schedule per check rather than
+ * a Vert.x timer each. A check that finds the connection quiet for a heartbeat interval sends
+ * it a WebSocket ping, which any live client answers with a pong; one that finds it quiet for
+ * the idle timeout closes it. Inbound messages and pongs both count as activity.
+ *
+ * <p>A connection whose socket is paused while a blocking {@link MessageHandler} runs cannot
+ * answer pings, so it is neither pinged nor reaped until the handler has finished.
+ *
+ * <p>Checks run on the wheel's thread and only read the connection's last activity time;
+ * pings and reaping are handed to the connection's own context.
+ */
+public class HeartbeatMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatMonitor.class);
+    private static final long TICK_MS = 100;
+    private static final int WHEEL_SIZE = 1024;
+
+    private final boolean enabled;
+    private final long intervalNanos;
+    private final long idleTimeoutNanos;
+    private final LongAdder reaped = new LongAdder();
+    // Its worker thread starts with the first check
+    private final HashedWheelTimer wheel = new HashedWheelTimer(new DefaultThreadFactory("heartbeat-wheel", true),
+        TICK_MS, TimeUnit.MILLISECONDS, WHEEL_SIZE);
+
+    public HeartbeatMonitor(ServerOptions options) {
+        this.enabled = options.isHeartbeatEnabled();
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(options.getHeartbeatIntervalSeconds());
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(options.getIdleTimeoutSeconds());
+    }
+
+    public long reapedConnections() {
+        return reaped.sum();
+    }
+
+    // Starts watching a registered connection; the check is cancelled when the connection closes
+    public void watch(ClientConnection connection, Runnable reap) {
+        if (enabled) {
+            schedule(connection, reap, intervalNanos);
+        }
+    }
+
+    private void schedule(ClientConnection connection, Runnable reap, long delayNanos) {
+        connection.idleCheck(wheel.newTimeout(timeout -> check(connection, reap), delayNanos, TimeUnit.NANOSECONDS));
+    }
+
+    private void check(ClientConnection connection, Runnable reap) {
+        if (connection.isClosed()) {
+            return;
+        }
+        if (connection.isHandlerRunning()) {
+            schedule(connection, reap, intervalNanos);
+            return;
+        }
+        long idle = System.nanoTime() - connection.lastActivity();
+        if (idle >= idleTimeoutNanos) {
+            connection.context().runOnContext(v -> {
+                if (!connection.isClosed()) {
+                    logger.info("Reaping connection {}, idle for {} ms", connection.id(),
+                        TimeUnit.NANOSECONDS.toMillis(idle));
+                    reaped.increment();
+                    reap.run();
+                }
+            });
+            return;
+        }
+        if (idle >= intervalNanos) {
+            connection.context().runOnContext(v -> connection.ping());
+        }
+        // Next look at the end of the current quiet interval, or at the deadline if that is sooner
+        long untilQuiet = idle >= intervalNanos ? intervalNanos : intervalNanos - idle;
+        schedule(connection, reap, Math.min(untilQuiet, idleTimeoutNanos - idle));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.websocket;
+
+import java.util.List;
+
+/**
+ * Streams the recorded messages a client missed, after it asks to replay from its last seen
+ * sequence number. Messages go out in batches, one per event-loop turn, and the next batch
+ * waits while the connection still has a backlog, so a long replay neither holds up the loop
+ * nor floods a slow client. Messages recorded after the request arrive live and are not
+ * replayed; the client drops any it has already seen by their sequence number.
+ */
+public class HistoryReplay {
+    private static final long BACKLOG_RETRY_MS = 20;
+
+    private final ClientConnection connection;
+    private final ConnectionRegistry registry;
+    private final MessageHistory.Cursor cursor;
+    private final long untilSeq;
+    private final int batchSize;
+    private int replayed;
+
+    public HistoryReplay(ClientConnection connection, ConnectionRegistry registry, MessageHistory history,
+                         long afterSeq, int batchSize) {
+        this.connection = connection;
+        this.registry = registry;
+        this.cursor = history.cursor(afterSeq);
+        this.untilSeq = history.lastSeq();
+        this.batchSize = batchSize;
+    }
+
+    // Must be called on the connection's context
+    public void start() {
+        nextBatch();
+    }
+
+    private void nextBatch() {
+        if (connection.isClosed()) {
+            return;
+        }
+        if (connection.backlogDepth() > 0) {
+            connection.context().owner().setTimer(BACKLOG_RETRY_MS, id -> nextBatch());
+            return;
+        }
+        List<MessageHistory.Entry> batch = cursor.next(batchSize);
+        boolean done = batch.isEmpty();
+        MessageCodec codec = connection.codec();
+        for (MessageHistory.Entry entry : batch) {
+            if (entry.seq() > untilSeq) {
+                done = true;
+                break;
+            }
+            if (!visible(entry)) {
+                continue;
+            }
+            Peer from = sender(entry.fromId());
+            connection.send(entry.type() == MessageType.PRIVATE
+                ? codec.privateMessage(from, entry.message(), entry.seq(), entry.timestamp())
+                : codec.broadcast(from, entry.message(), entry.seq(), entry.timestamp()));
+            replayed++;
+        }
+        if (done) {
+            connection.send(codec.replayComplete(untilSeq, replayed, cursor.gap()));
+        } else {
+            connection.context().runOnContext(v -> nextBatch());
+        }
+    }
+
+    // Broadcasts go to everyone, private messages only to their target
+    private boolean visible(MessageHistory.Entry entry) {
+        return entry.targetId() == null || entry.targetId().equals(connection.id());
+    }
+
+    private Peer sender(String fromId) {
+        ClientConnection local = registry.get(fromId);
+        return local != null ? local : new Sender(fromId);
+    }
+
+    // A sender that has since disconnected; the binary protocol sees handle 0
+    private static final class Sender implements Peer {
+        private final String id;
+
+        Sender(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public int handle() {
+            return 0;
+        }
+    }
+}
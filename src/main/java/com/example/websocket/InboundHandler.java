@@ -0,0 +1,27 @@
+package com.example.websocket;
+
+/**
+ * Receives decoded client messages. Decoders hand over plain fields so no intermediate
+ * message object has to be built.
+ */
+public interface InboundHandler {
+    void onPing(ClientConnection connection, String originalTimestamp, long originalEpochMillis);
+
+    void onBroadcast(ClientConnection connection, String message);
+
+    // The JSON protocol names the target by id, the binary protocol by handle (targetId is then null)
+    void onPrivate(ClientConnection connection, String targetId, int targetHandle, String message);
+
+    void onEcho(ClientConnection connection, String message);
+
+    void onSubscribe(ClientConnection connection, String pattern);
+
+    void onUnsubscribe(ClientConnection connection, String pattern);
+
+    void onPublish(ClientConnection connection, String topic, String message);
+
+    // Asks for the recorded messages after the given sequence number
+    void onReplay(ClientConnection connection, long afterSeq);
+
+    void onError(ClientConnection connection, String errorMessage);
+}
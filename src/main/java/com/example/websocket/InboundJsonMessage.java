@@ -0,0 +1,135 @@
+package com.example.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+
+/**
+ * The fields of one client JSON message that the server routes and handles on, read with
+ * Jackson's streaming parser instead of building a {@link JsonObject}. Other fields are
+ * skipped without being materialized, so a large payload in a field the server does not use
+ * costs a scan rather than a tree of maps and strings. The frame is still fully checked to be
+ * one well-formed JSON object.
+ *
+ * <p>Messages the server only passes on, such as general messages, keep their original text,
+ * which is written out again without being re-encoded. A custom handler that needs the whole
+ * object gets it from {@link #toJsonObject()}.
+ */
+public final class InboundJsonMessage {
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final String raw;
+    private String type = "message";
+    private String message;
+    private String targetId;
+    private String topic;
+    private String timestamp;
+    private long lastSeq;
+
+    private InboundJsonMessage(String raw) {
+        this.raw = raw;
+    }
+
+    // Throws if the frame is not a single JSON object
+    public static InboundJsonMessage read(String frame) throws IOException {
+        InboundJsonMessage msg = new InboundJsonMessage(frame);
+        try (JsonParser parser = FACTORY.createParser(frame)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "type":
+                        msg.type = text(parser, value, frame);
+                        break;
+                    case "message":
+                        msg.message = text(parser, value, frame);
+                        break;
+                    case "targetId":
+                        msg.targetId = text(parser, value, frame);
+                        break;
+                    case "topic":
+                        msg.topic = text(parser, value, frame);
+                        break;
+                    case "timestamp":
+                        msg.timestamp = text(parser, value, frame);
+                        break;
+                    case "lastSeq":
+                        if (value != JsonToken.VALUE_NULL && !value.isNumeric()) {
+                            throw new JsonParseException(parser, "lastSeq must be a number");
+                        }
+                        msg.lastSeq = value == JsonToken.VALUE_NULL ? 0 : parser.getValueAsLong();
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Expected a single JSON object");
+            }
+        }
+        if (msg.type == null) {
+            msg.type = "message";
+        }
+        return msg;
+    }
+
+    // A string as is, another scalar as its text and an object or array as its JSON text
+    private static String text(JsonParser parser, JsonToken value, String frame) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value.isScalarValue()) {
+            return parser.getText();
+        }
+        int start = (int) parser.currentTokenLocation().getCharOffset();
+        parser.skipChildren();
+        return frame.substring(start, (int) parser.currentLocation().getCharOffset());
+    }
+
+    public String type() {
+        return type;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    // The message field, or "" when it is absent
+    public String messageOrEmpty() {
+        return message != null ? message : "";
+    }
+
+    public String targetId() {
+        return targetId;
+    }
+
+    public String topic() {
+        return topic;
+    }
+
+    public String timestamp() {
+        return timestamp;
+    }
+
+    public long lastSeq() {
+        return lastSeq;
+    }
+
+    // The frame as received
+    public String raw() {
+        return raw;
+    }
+
+    // Parses the whole frame, for handlers that need every field
+    public JsonObject toJsonObject() {
+        return new JsonObject(raw);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The JSON text protocol used by the browser client and the interactive Java client.
+ *
+ * <p>The frames the server sends most, pongs above all, are written from {@link JsonTemplate}s
+ * rather than built as a {@code JsonObject} and encoded; the rest are rare enough not to matter.
+ */
+public class JsonMessageCodec implements MessageCodec {
+    private static final JsonTemplate PONG = JsonTemplate.of(MessageType.PONG, "timestamp", "originalTimestamp");
+    private static final JsonTemplate PRIVATE_SENT = JsonTemplate.of(MessageType.PRIVATE_SENT,
+        "targetId", "message", "timestamp");
+    private static final JsonTemplate ECHO = JsonTemplate.of(MessageType.ECHO, "originalMessage", "timestamp");
+    private static final JsonTemplate USER_JOINED = JsonTemplate.of(MessageType.USER_JOINED,
+        "connectionId", "timestamp", "totalConnections");
+    private static final JsonTemplate USER_LEFT = JsonTemplate.of(MessageType.USER_LEFT,
+        "connectionId", "timestamp", "totalConnections");
+    private static final JsonTemplate ERROR = JsonTemplate.of(MessageType.ERROR, "message", "timestamp");
+    private static final JsonTemplate MESSAGE_RECEIVED = JsonTemplate.of("message_received",
+        "connectionId", "receivedMessage", "timestamp");
+
+    private final TimestampFormat timestampFormat;
+
+    public JsonMessageCodec(TimestampFormat timestampFormat) {
+        this.timestampFormat = timestampFormat;
+    }
+
+    @Override
+    public ByteBuf welcome(Peer peer, String resumeToken, boolean resumed, String message) {
+        JsonObject welcome = new JsonObject()
+            .put("type", MessageType.WELCOME.jsonName())
+            .put("connectionId", peer.id())
+            .put("timestamp", now())
+            .put("message", message);
+        if (resumeToken != null) {
+            welcome.put("resumeToken", resumeToken).put("resumed", resumed);
+        }
+        return encode(welcome);
+    }
+
+    @Override
+    public ByteBuf pong(String originalTimestamp, long originalEpochMillis) {
+        return PONG.begin()
+            .timestamp(timestampFormat, System.currentTimeMillis())
+            .string(originalTimestamp)
+            .finish();
+    }
+
+    @Override
+    public ByteBuf broadcast(Peer from, String message, long seq, long timestamp) {
+        return encode(sequenced(new JsonObject()
+            .put("type", MessageType.BROADCAST.jsonName())
+            .put("from", from.id())
+            .put("message", message)
+            .put("timestamp", timestamp(timestamp)), seq));
+    }
+
+    @Override
+    public ByteBuf privateMessage(Peer from, String message, long seq, long timestamp) {
+        return encode(sequenced(new JsonObject()
+            .put("type", MessageType.PRIVATE.jsonName())
+            .put("from", from.id())
+            .put("message", message)
+            .put("timestamp", timestamp(timestamp)), seq));
+    }
+
+    @Override
+    public ByteBuf privateSent(Peer target, String message) {
+        return PRIVATE_SENT.begin()
+            .string(target.id())
+            .string(message)
+            .timestamp(timestampFormat, System.currentTimeMillis())
+            .finish();
+    }
+
+    @Override
+    public ByteBuf echo(String originalMessage) {
+        return ECHO.begin()
+            .string(originalMessage)
+            .timestamp(timestampFormat, System.currentTimeMillis())
+            .finish();
+    }
+
+    @Override
+    public ByteBuf presence(MessageType type, Peer subject, int totalConnections) {
+        return (type == MessageType.USER_JOINED ? USER_JOINED : USER_LEFT).begin()
+            .string(subject.id())
+            .timestamp(timestampFormat, System.currentTimeMillis())
+            .number(totalConnections)
+            .finish();
+    }
+
+    @Override
+    public ByteBuf presenceBatch(List<Peer> joined, List<Peer> left, int totalConnections) {
+        return encode(new JsonObject()
+            .put("type", MessageType.PRESENCE.jsonName())
+            .put("joined", ids(joined))
+            .put("left", ids(left))
+            .put("timestamp", now())
+            .put("totalConnections", totalConnections));
+    }
+
+    @Override
+    public ByteBuf error(String message) {
+        return ERROR.begin()
+            .string(message)
+            .timestamp(timestampFormat, System.currentTimeMillis())
+            .finish();
+    }
+
+    @Override
+    public ByteBuf reconnect(long delayMs, String reason) {
+        return encode(new JsonObject()
+            .put("type", MessageType.RECONNECT.jsonName())
+            .put("delayMs", delayMs)
+            .put("reason", reason)
+            .put("timestamp", now()));
+    }
+
+    @Override
+    public ByteBuf topicMessage(String topic, Peer from, String message) {
+        return encode(new JsonObject()
+            .put("type", MessageType.TOPIC_MESSAGE.jsonName())
+            .put("topic", topic)
+            .put("from", from.id())
+            .put("message", message)
+            .put("timestamp", now()));
+    }
+
+    @Override
+    public ByteBuf subscription(MessageType type, String pattern) {
+        return encode(new JsonObject()
+            .put("type", type.jsonName())
+            .put("topic", pattern)
+            .put("timestamp", now()));
+    }
+
+    @Override
+    public ByteBuf replayComplete(long lastSeq, int replayed, boolean gap) {
+        return encode(new JsonObject()
+            .put("type", MessageType.REPLAY_COMPLETE.jsonName())
+            .put("lastSeq", lastSeq)
+            .put("replayed", replayed)
+            .put("gap", gap)
+            .put("timestamp", now()));
+    }
+
+    // Acknowledges a message of a type the server does not handle. receivedMessage is the
+    // client's JSON text, embedded without being parsed and re-encoded.
+    public ByteBuf messageReceived(Peer peer, String receivedMessage) {
+        return MESSAGE_RECEIVED.begin()
+            .string(peer.id())
+            .raw(receivedMessage)
+            .timestamp(timestampFormat, System.currentTimeMillis())
+            .finish();
+    }
+
+    // A reply from a custom MessageHandler, sent as the handler built it
+    public ByteBuf handlerReply(JsonObject reply) {
+        return encode(reply);
+    }
+
+    private Object now() {
+        return timestampFormat == TimestampFormat.EPOCH_MILLIS
+            ? (Object) System.currentTimeMillis()
+            : TimestampService.isoNow();
+    }
+
+    private Object timestamp(long millis) {
+        return timestampFormat == TimestampFormat.EPOCH_MILLIS ? (Object) millis : TimestampService.iso(millis);
+    }
+
+    private static JsonArray ids(List<Peer> peers) {
+        JsonArray ids = new JsonArray(new ArrayList<>(peers.size()));
+        peers.forEach(peer -> ids.add(peer.id()));
+        return ids;
+    }
+
+    private static JsonObject sequenced(JsonObject message, long seq) {
+        return seq > 0 ? message.put("seq", seq) : message;
+    }
+
+    private static ByteBuf encode(JsonObject message) {
+        return Unpooled.wrappedBuffer(message.encode().getBytes(StandardCharsets.UTF_8));
+    }
+}
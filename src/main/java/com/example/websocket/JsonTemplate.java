@@ -0,0 +1,201 @@
+package com.example.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The fixed layout of one server-generated JSON message: its type and field names, encoded to
+ * bytes once. A message is written by filling in the field values in order, each straight after
+ * the template bytes that precede it, so nothing is built or encoded field by field.
+ *
+ * <p>Each thread writes into a scratch buffer of its own that is kept between messages, and the
+ * finished message is copied into a pooled buffer of exactly its size. On an event loop a pong
+ * or an echo therefore allocates no garbage beyond the strings it was given.
+ *
+ * <p>Strings are escaped as Jackson escapes them, so a message is byte for byte what encoding
+ * the equivalent {@code JsonObject} would produce.
+ */
+final class JsonTemplate {
+    // A scratch buffer that grew past this for one large message is not kept
+    private static final int MAX_RETAINED_SCRATCH = 64 * 1024;
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+
+    private static final FastThreadLocal<Writer> WRITER = new FastThreadLocal<>() {
+        @Override
+        protected Writer initialValue() {
+            return new Writer();
+        }
+    };
+
+    // segments[i] comes before the value of field i; the last one closes the object
+    private final byte[][] segments;
+
+    private JsonTemplate(byte[][] segments) {
+        this.segments = segments;
+    }
+
+    // A message of the given type with these fields after its "type" field
+    static JsonTemplate of(MessageType type, String... fields) {
+        return of(type.jsonName(), fields);
+    }
+
+    static JsonTemplate of(String type, String... fields) {
+        byte[][] segments = new byte[fields.length + 1][];
+        StringBuilder text = new StringBuilder("{\"type\":\"").append(type).append('"');
+        for (int i = 0; i < fields.length; i++) {
+            segments[i] = ascii(text.append(",\"").append(fields[i]).append("\":").toString());
+            text.setLength(0);
+        }
+        segments[fields.length] = ascii(text.append('}').toString());
+        return new JsonTemplate(segments);
+    }
+
+    // Starts a message in the calling thread's scratch buffer
+    Writer begin() {
+        return WRITER.get().start(this);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Fills in the fields of one message. Every field must be written, in template order, before
+     * {@link #finish()}.
+     */
+    static final class Writer {
+        private final byte[] digits = new byte[20];
+        private ByteBuf scratch = Unpooled.buffer(256);
+        private byte[][] segments;
+        private int next;
+
+        private Writer start(JsonTemplate template) {
+            segments = template.segments;
+            next = 0;
+            scratch.clear();
+            return segment();
+        }
+
+        // A JSON string, escaped, or null
+        Writer string(String value) {
+            if (value == null) {
+                scratch.writeBytes(NULL);
+                return segment();
+            }
+            scratch.writeByte('"');
+            int start = 0;
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x20 || c == '"' || c == '\\') {
+                    if (i > start) {
+                        ByteBufUtil.writeUtf8(scratch, value, start, i);
+                    }
+                    escape(c);
+                    start = i + 1;
+                }
+            }
+            if (start < length) {
+                ByteBufUtil.writeUtf8(scratch, value, start, length);
+            }
+            scratch.writeByte('"');
+            return segment();
+        }
+
+        Writer number(long value) {
+            if (value == Long.MIN_VALUE) {
+                scratch.writeCharSequence(Long.toString(value), StandardCharsets.US_ASCII);
+                return segment();
+            }
+            if (value < 0) {
+                scratch.writeByte('-');
+                value = -value;
+            }
+            int position = digits.length;
+            do {
+                digits[--position] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            scratch.writeBytes(digits, position, digits.length - position);
+            return segment();
+        }
+
+        Writer bool(boolean value) {
+            scratch.writeBytes(value ? TRUE : FALSE);
+            return segment();
+        }
+
+        // Epoch milliseconds as a number, or the cached ISO text as a string
+        Writer timestamp(TimestampFormat format, long millis) {
+            if (format == TimestampFormat.EPOCH_MILLIS) {
+                return number(millis);
+            }
+            scratch.writeByte('"');
+            scratch.writeCharSequence(TimestampService.iso(millis), StandardCharsets.US_ASCII);
+            scratch.writeByte('"');
+            return segment();
+        }
+
+        // Text that is already JSON, written as it is
+        Writer raw(String json) {
+            ByteBufUtil.writeUtf8(scratch, json);
+            return segment();
+        }
+
+        // The finished message in a buffer of its own, which the caller owns
+        ByteBuf finish() {
+            if (next != segments.length) {
+                throw new IllegalStateException("Not every field of the message was written");
+            }
+            ByteBuf message = ByteBufAllocator.DEFAULT.buffer(scratch.readableBytes());
+            message.writeBytes(scratch);
+            segments = null;
+            if (scratch.capacity() > MAX_RETAINED_SCRATCH) {
+                scratch = Unpooled.buffer(256);
+            }
+            return message;
+        }
+
+        private Writer segment() {
+            scratch.writeBytes(segments[next++]);
+            return this;
+        }
+
+        private void escape(char c) {
+            scratch.writeByte('\\');
+            switch (c) {
+                case '"':
+                case '\\':
+                    scratch.writeByte(c);
+                    break;
+                case '\b':
+                    scratch.writeByte('b');
+                    break;
+                case '\f':
+                    scratch.writeByte('f');
+                    break;
+                case '\n':
+                    scratch.writeByte('n');
+                    break;
+                case '\r':
+                    scratch.writeByte('r');
+                    break;
+                case '\t':
+                    scratch.writeByte('t');
+                    break;
+                default:
+                    scratch.writeByte('u').writeByte('0').writeByte('0')
+                        .writeByte(HEX[c >> 4]).writeByte(HEX[c & 0xF]);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.websocket;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Headless capacity test: many connections from one JVM sending a scripted message mix at a
+ * target rate, with periodic and final reports of throughput, errors and ping round-trip
+ * latency. Started with {@code WebSocketClient --load}.
+ */
+public class LoadGenerator {
+    private final LoadOptions options;
+    private final LoadStats stats = new LoadStats();
+    private final Vertx vertx = Vertx.vertx();
+    private long startNanos;
+    private long lastReportNanos;
+    private long lastSent;
+    private long lastReceived;
+
+    public LoadGenerator(LoadOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) {
+        LoadOptions options;
+        try {
+            options = new LoadOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        new LoadGenerator(options).run();
+    }
+
+    public void run() {
+        System.out.printf("Load test against ws://%s:%d: %d connections over %ds, then %ds at %d msg/s, mix %s, %d byte payloads%n",
+            options.getHost(), options.getPort(), options.getConnections(), options.getRampUpSeconds(),
+            options.getDurationSeconds(), options.getRate(), options.getMix(), options.getPayloadSize());
+        
+        // One worker per event loop, each with an equal slice of the connections and the rate
+        int connections = options.getConnections();
+        int workers = Math.min(connections, 2 * Runtime.getRuntime().availableProcessors());
+        AtomicReferenceArray<String> connectionIds = new AtomicReferenceArray<>(connections);
+        List<Future<String>> deployments = new ArrayList<>();
+        int first = 0;
+        for (int w = 0; w < workers; w++) {
+            int count = connections / workers + (w < connections % workers ? 1 : 0);
+            double rate = (double) options.getRate() * count / connections;
+            deployments.add(vertx.deployVerticle(new LoadWorker(options, stats, first, count, rate, connectionIds)));
+            first += count;
+        }
+        
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        long reportTimer = vertx.setPeriodic(TimeUnit.SECONDS.toMillis(options.getReportIntervalSeconds()), id -> report());
+        long runMs = TimeUnit.SECONDS.toMillis(options.getRampUpSeconds() + options.getDurationSeconds());
+        Future.all(deployments).onFailure(throwable -> {
+            System.err.println("Failed to start load workers: " + throwable.getMessage());
+            vertx.close();
+            System.exit(1);
+        });
+        vertx.setTimer(runMs, id -> {
+            vertx.cancelTimer(reportTimer);
+            report();
+            summary();
+            vertx.close().onComplete(ar -> System.exit(0));
+        });
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        double seconds = (now - lastReportNanos) / 1_000_000_000.0;
+        long sent = stats.sentCount();
+        long received = stats.receivedCount();
+        Histogram latency = stats.intervalPingLatency();
+        System.out.printf("[%5ds] open %d/%d | sent %.1f/s | received %.1f/s | errors %d | ping %s%n",
+            TimeUnit.NANOSECONDS.toSeconds(now - startNanos), stats.openConnections(), options.getConnections(),
+            (sent - lastSent) / seconds, (received - lastReceived) / seconds, errors(), describe(latency));
+        lastReportNanos = now;
+        lastSent = sent;
+        lastReceived = received;
+    }
+
+    private void summary() {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        Histogram latency = stats.totalPingLatency();
+        System.out.println();
+        System.out.println("=".repeat(50));
+        System.out.printf("Duration:           %.1f s%n", seconds);
+        System.out.printf("Messages sent:      %d (%.1f/s)%n", stats.sentCount(), stats.sentCount() / seconds);
+        System.out.printf("Messages received:  %d (%.1f/s)%n", stats.receivedCount(), stats.receivedCount() / seconds);
+        System.out.printf("Server errors:      %d%n", stats.serverErrorCount());
+        System.out.printf("Connect failures:   %d%n", stats.connectFailureCount());
+        System.out.printf("Unexpected closes:  %d%n", stats.unexpectedCloseCount());
+        System.out.printf("Ping round trip:    %s%n", describe(latency));
+        System.out.println("=".repeat(50));
+        if (latency.getTotalCount() > 0) {
+            System.out.println("Ping round-trip distribution (ms):");
+            latency.outputPercentileDistribution(System.out, 5, 1000.0);
+        }
+    }
+
+    private long errors() {
+        return stats.serverErrorCount() + stats.connectFailureCount() + stats.unexpectedCloseCount();
+    }
+
+    // Histogram values are microseconds
+    private static String describe(Histogram latency) {
+        if (latency.getTotalCount() == 0) {
+            return "no samples";
+        }
+        return String.format("n=%d p50 %.2f ms p90 %.2f ms p99 %.2f ms max %.2f ms", latency.getTotalCount(),
+            latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(90) / 1000.0,
+            latency.getValueAtPercentile(99) / 1000.0, latency.getMaxValue() / 1000.0);
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.websocket;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings for the headless load mode of {@link WebSocketClient}, parsed from
+ * {@code --name value} command-line pairs. Every option is optional.
+ */
+public class LoadOptions {
+    public static final String DEFAULT_HOST = "localhost";
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_CONNECTIONS = 100;
+    public static final int DEFAULT_RAMP_UP_SECONDS = 10;
+    public static final int DEFAULT_DURATION_SECONDS = 60;
+    public static final int DEFAULT_RATE = 100;
+    public static final String DEFAULT_MIX = "ping=1,broadcast=1,private=1,echo=1";
+    public static final int DEFAULT_PAYLOAD_SIZE = 32;
+    public static final int DEFAULT_REPORT_INTERVAL_SECONDS = 5;
+
+    static final String USAGE = String.join("\n",
+        "Usage: WebSocketClient --load [options]",
+        "  --host <host>            Server host (default " + DEFAULT_HOST + ")",
+        "  --port <port>            Server port (default " + DEFAULT_PORT + ")",
+        "  --connections <n>        Concurrent connections (default " + DEFAULT_CONNECTIONS + ")",
+        "  --ramp-up <seconds>      Time over which connections are opened (default " + DEFAULT_RAMP_UP_SECONDS + ")",
+        "  --duration <seconds>     Time to send at the target rate after ramp-up (default " + DEFAULT_DURATION_SECONDS + ")",
+        "  --rate <messages/s>      Total send rate across all connections (default " + DEFAULT_RATE + ")",
+        "  --mix <type=weight,...>  Relative weights of ping, broadcast, private and echo (default " + DEFAULT_MIX + ")",
+        "  --payload <bytes>        Message text size (default " + DEFAULT_PAYLOAD_SIZE + ")",
+        "  --report <seconds>       Interval between progress reports (default " + DEFAULT_REPORT_INTERVAL_SECONDS + ")",
+        "  --compression <on|off>   Offer permessage-deflate to the server (default off)");
+
+    private String host = DEFAULT_HOST;
+    private int port = DEFAULT_PORT;
+    private int connections = DEFAULT_CONNECTIONS;
+    private int rampUpSeconds = DEFAULT_RAMP_UP_SECONDS;
+    private int durationSeconds = DEFAULT_DURATION_SECONDS;
+    private int rate = DEFAULT_RATE;
+    private Map<MessageType, Integer> mix = parseMix(DEFAULT_MIX);
+    private int payloadSize = DEFAULT_PAYLOAD_SIZE;
+    private int reportIntervalSeconds = DEFAULT_REPORT_INTERVAL_SECONDS;
+    private boolean compression;
+
+    public LoadOptions(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[i + 1];
+            switch (name) {
+                case "--host":
+                    host = value;
+                    break;
+                case "--port":
+                    port = positive(name, value);
+                    break;
+                case "--connections":
+                    connections = positive(name, value);
+                    break;
+                case "--ramp-up":
+                    rampUpSeconds = nonNegative(name, value);
+                    break;
+                case "--duration":
+                    durationSeconds = positive(name, value);
+                    break;
+                case "--rate":
+                    rate = nonNegative(name, value);
+                    break;
+                case "--mix":
+                    mix = parseMix(value);
+                    break;
+                case "--payload":
+                    payloadSize = nonNegative(name, value);
+                    break;
+                case "--report":
+                    reportIntervalSeconds = positive(name, value);
+                    break;
+                case "--compression":
+                    compression = onOff(name, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public int getRampUpSeconds() {
+        return rampUpSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    // Weights of the message types to send; types with no weight are never sent
+    public Map<MessageType, Integer> getMix() {
+        return mix;
+    }
+
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    public int getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    private static Map<MessageType, Integer> parseMix(String value) {
+        Map<MessageType, Integer> weights = new EnumMap<>(MessageType.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split("=", 2);
+            MessageType type = mixType(parts[0].trim());
+            int weight = parts.length > 1 ? nonNegative("--mix", parts[1].trim()) : 1;
+            if (weight > 0) {
+                weights.put(type, weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("--mix needs at least one message type with a positive weight");
+        }
+        return weights;
+    }
+
+    private static MessageType mixType(String name) {
+        switch (name) {
+            case "ping":
+                return MessageType.PING;
+            case "broadcast":
+                return MessageType.BROADCAST;
+            case "private":
+                return MessageType.PRIVATE;
+            case "echo":
+                return MessageType.ECHO;
+            default:
+                throw new IllegalArgumentException("Unknown message type in --mix: " + name);
+        }
+    }
+
+    private static boolean onOff(String name, String value) {
+        switch (value) {
+            case "on":
+                return true;
+            case "off":
+                return false;
+            default:
+                throw new IllegalArgumentException(name + " must be on or off: " + value);
+        }
+    }
+
+    private static int positive(String name, String value) {
+        int parsed = nonNegative(name, value);
+        if (parsed == 0) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return parsed;
+    }
+
+    private static int nonNegative(String name, String value) {
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number: " + value);
+        }
+        if (parsed < 0) {
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
+        return parsed;
+    }
+}
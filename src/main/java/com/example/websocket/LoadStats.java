@@ -0,0 +1,93 @@
+package com.example.websocket;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and the ping round-trip histogram shared by every {@link LoadWorker}. Workers record
+ * from their own event loops; the reporter takes interval snapshots and keeps the run total.
+ */
+public class LoadStats {
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder unexpectedCloses = new LongAdder();
+    private final Recorder pingLatency = new Recorder(MAX_LATENCY_MICROS, 3);
+    private final Histogram totalPingLatency = new Histogram(MAX_LATENCY_MICROS, 3);
+    private Histogram interval;
+
+    void connected() {
+        openConnections.incrementAndGet();
+    }
+
+    void closed(boolean expected) {
+        openConnections.decrementAndGet();
+        if (!expected) {
+            unexpectedCloses.increment();
+        }
+    }
+
+    void connectFailed() {
+        connectFailures.increment();
+    }
+
+    void sent() {
+        sent.increment();
+    }
+
+    void received() {
+        received.increment();
+    }
+
+    void serverError() {
+        serverErrors.increment();
+    }
+
+    void pingRoundTrip(long nanos) {
+        pingLatency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_LATENCY_MICROS));
+    }
+
+    int openConnections() {
+        return openConnections.get();
+    }
+
+    long sentCount() {
+        return sent.sum();
+    }
+
+    long receivedCount() {
+        return received.sum();
+    }
+
+    long serverErrorCount() {
+        return serverErrors.sum();
+    }
+
+    long connectFailureCount() {
+        return connectFailures.sum();
+    }
+
+    long unexpectedCloseCount() {
+        return unexpectedCloses.sum();
+    }
+
+    // Latencies recorded since the previous call, in microseconds; only called by the reporter
+    Histogram intervalPingLatency() {
+        interval = pingLatency.getIntervalHistogram(interval);
+        totalPingLatency.add(interval);
+        return interval;
+    }
+
+    // Every latency recorded up to the last intervalPingLatency() call
+    Histogram totalPingLatency() {
+        return totalPingLatency;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.websocket;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.http.WebSocketClient;
+import io.vertx.core.http.WebSocketClientOptions;
+import io.vertx.core.http.WebSocketConnectOptions;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Drives a slice of the load generator's connections from one event loop: opens them on the
+ * ramp-up schedule, then sends its share of the target rate round-robin over the open sockets.
+ */
+public class LoadWorker extends AbstractVerticle {
+    private static final Logger logger = LoggerFactory.getLogger(LoadWorker.class);
+    private static final long TICK_MS = 10;
+    private static final String WEBSOCKET_PATH = "/websocket";
+    // The server always writes the type first, so replies can be classified without parsing
+    private static final String PONG_PREFIX = "{\"type\":\"pong\"";
+    private static final String WELCOME_PREFIX = "{\"type\":\"welcome\"";
+    private static final String ERROR_PREFIX = "{\"type\":\"error\"";
+
+    private final LoadOptions options;
+    private final LoadStats stats;
+    private final int firstIndex;
+    private final double rate;
+    private final AtomicReferenceArray<String> connectionIds;
+    private final WebSocket[] sockets;
+    private final MessageType[] mixTypes;
+    private final int[] mixThresholds;
+    private final String broadcastMessage;
+    private final String echoMessage;
+    private final String payload;
+    private WebSocketClient webSocketClient;
+    private long lastTickNanos;
+    private double credit;
+    private int nextSocket;
+    private boolean stopping;
+
+    // Owns connections [firstIndex, firstIndex + count) of the run and sends at rate messages per second
+    public LoadWorker(LoadOptions options, LoadStats stats, int firstIndex, int count, double rate,
+                      AtomicReferenceArray<String> connectionIds) {
+        this.options = options;
+        this.stats = stats;
+        this.firstIndex = firstIndex;
+        this.rate = rate;
+        this.connectionIds = connectionIds;
+        this.sockets = new WebSocket[count];
+        
+        Map<MessageType, Integer> mix = options.getMix();
+        mixTypes = mix.keySet().toArray(new MessageType[0]);
+        mixThresholds = new int[mixTypes.length];
+        int total = 0;
+        for (int i = 0; i < mixTypes.length; i++) {
+            total += mix.get(mixTypes[i]);
+            mixThresholds[i] = total;
+        }
+        
+        payload = "x".repeat(options.getPayloadSize());
+        broadcastMessage = new JsonObject().put("type", "broadcast").put("message", payload).encode();
+        echoMessage = new JsonObject().put("type", "echo").put("message", payload).encode();
+    }
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        webSocketClient = vertx.createWebSocketClient(new WebSocketClientOptions()
+            .setMaxConnections(sockets.length)
+            .setTryUsePerMessageCompression(options.isCompression()));
+        long rampUpMs = options.getRampUpSeconds() * 1000L;
+        for (int slot = 0; slot < sockets.length; slot++) {
+            int index = slot;
+            long delay = rampUpMs * (firstIndex + slot) / options.getConnections();
+            vertx.setTimer(Math.max(1, delay), id -> connect(index));
+        }
+        lastTickNanos = System.nanoTime();
+        vertx.setPeriodic(TICK_MS, id -> tick());
+        startPromise.complete();
+    }
+
+    private void connect(int slot) {
+        if (stopping) {
+            return;
+        }
+        WebSocketConnectOptions connectOptions = new WebSocketConnectOptions()
+            .setHost(options.getHost())
+            .setPort(options.getPort())
+            .setURI(WEBSOCKET_PATH);
+        webSocketClient.connect(connectOptions)
+            .onSuccess(ws -> {
+                sockets[slot] = ws;
+                stats.connected();
+                ws.textMessageHandler(message -> onMessage(slot, message));
+                ws.closeHandler(v -> {
+                    sockets[slot] = null;
+                    stats.closed(stopping);
+                });
+                ws.exceptionHandler(throwable -> logger.debug("WebSocket error on load connection {}", slot, throwable));
+            })
+            .onFailure(throwable -> {
+                logger.debug("Load connection {} failed to connect", slot, throwable);
+                stats.connectFailed();
+            });
+    }
+
+    private void onMessage(int slot, String message) {
+        stats.received();
+        if (message.startsWith(PONG_PREFIX)) {
+            String originalTimestamp = new JsonObject(message).getString("originalTimestamp");
+            stats.pingRoundTrip(System.nanoTime() - Long.parseLong(originalTimestamp));
+        } else if (message.startsWith(ERROR_PREFIX)) {
+            stats.serverError();
+        } else if (message.startsWith(WELCOME_PREFIX)) {
+            connectionIds.set(firstIndex + slot, new JsonObject(message).getString("connectionId"));
+        }
+    }
+
+    // Earns credit at the target rate and spends it on the next open sockets
+    private void tick() {
+        long now = System.nanoTime();
+        credit += rate * (now - lastTickNanos) / 1_000_000_000.0;
+        lastTickNanos = now;
+        while (credit >= 1) {
+            WebSocket ws = nextOpenSocket();
+            if (ws == null) {
+                // Nothing to send on yet; do not build up a burst for when sockets open
+                credit = 0;
+                return;
+            }
+            ws.writeTextMessage(nextMessage());
+            stats.sent();
+            credit--;
+        }
+    }
+
+    private WebSocket nextOpenSocket() {
+        for (int i = 0; i < sockets.length; i++) {
+            WebSocket ws = sockets[nextSocket];
+            nextSocket = (nextSocket + 1) % sockets.length;
+            if (ws != null && !ws.writeQueueFull()) {
+                return ws;
+            }
+        }
+        return null;
+    }
+
+    private String nextMessage() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int pick = random.nextInt(mixThresholds[mixThresholds.length - 1]);
+        int i = 0;
+        while (pick >= mixThresholds[i]) {
+            i++;
+        }
+        switch (mixTypes[i]) {
+            case PING:
+                // Same JVM, so the server's echo of this value gives the round-trip time
+                return new JsonObject().put("type", "ping").put("timestamp", Long.toString(System.nanoTime())).encode();
+            case PRIVATE:
+                String targetId = connectionIds.get(random.nextInt(connectionIds.length()));
+                if (targetId == null) {
+                    return echoMessage;
+                }
+                return new JsonObject().put("type", "private").put("targetId", targetId).put("message", payload).encode();
+            case BROADCAST:
+                return broadcastMessage;
+            case ECHO:
+            default:
+                return echoMessage;
+        }
+    }
+
+    @Override
+    public void stop(Promise<Void> stopPromise) {
+        stopping = true;
+        for (WebSocket ws : sockets) {
+            if (ws != null) {
+                ws.close();
+            }
+        }
+        webSocketClient.close().onComplete(ar -> stopPromise.complete());
+    }
+}
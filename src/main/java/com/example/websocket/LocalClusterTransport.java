@@ -0,0 +1,69 @@
+package com.example.websocket;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-JVM cluster transport for running several nodes, each with its own Vert.x instance, in
+ * one process. Messages are copied and delivered on the receiving node's context, just as a
+ * real transport would deserialize them there.
+ */
+public class LocalClusterTransport implements ClusterTransport {
+    private static final Map<String, Member> MEMBERS = new ConcurrentHashMap<>();
+
+    private final Vertx vertx;
+    private String nodeId;
+
+    public LocalClusterTransport(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    @Override
+    public Future<Void> start(String nodeId, Handler<JsonObject> handler) {
+        this.nodeId = nodeId;
+        MEMBERS.put(nodeId, new Member(vertx.getOrCreateContext(), handler));
+        return Future.succeededFuture();
+    }
+
+    @Override
+    public void publish(JsonObject message) {
+        MEMBERS.values().forEach(member -> member.deliver(message));
+    }
+
+    @Override
+    public void send(String nodeId, JsonObject message) {
+        Member member = MEMBERS.get(nodeId);
+        if (member != null) {
+            member.deliver(message);
+        }
+    }
+
+    @Override
+    public Future<Void> close() {
+        if (nodeId != null) {
+            MEMBERS.remove(nodeId);
+        }
+        return Future.succeededFuture();
+    }
+
+    private static final class Member {
+        final Context context;
+        final Handler<JsonObject> handler;
+
+        Member(Context context, Handler<JsonObject> handler) {
+            this.context = context;
+            this.handler = handler;
+        }
+
+        void deliver(JsonObject message) {
+            JsonObject copy = message.copy();
+            context.runOnContext(v -> handler.handle(copy));
+        }
+    }
+}
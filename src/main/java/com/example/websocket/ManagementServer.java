@@ -0,0 +1,73 @@
+package com.example.websocket;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.web.Router;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The HTTP endpoints for probes and monitoring, on their own port and on a Vert.x instance of
+ * their own with a single event loop. However busy the server's event loops are with client
+ * traffic, probes are answered straight away from the {@link HealthMonitor}'s latest snapshot.
+ *
+ * <ul>
+ *   <li>{@code /health}: liveness, always 200 while the process is up</li>
+ *   <li>{@code /ready}: 200 when ready for clients, 503 otherwise</li>
+ *   <li>{@code /stats}: connection counts per protocol and event loop, with event-loop lag</li>
+ *   <li>{@code /metrics}: Prometheus metrics</li>
+ * </ul>
+ */
+public class ManagementServer {
+    private static final Logger logger = LoggerFactory.getLogger(ManagementServer.class);
+    private static final String JSON = "application/json";
+
+    private final ServerResources resources;
+    private final Vertx vertx = Vertx.vertx(new VertxOptions()
+        .setEventLoopPoolSize(1)
+        .setWorkerPoolSize(1)
+        .setInternalBlockingPoolSize(1));
+
+    public ManagementServer(ServerResources resources) {
+        this.resources = resources;
+    }
+
+    public Future<HttpServer> start() {
+        ServerOptions options = resources.options();
+        HealthMonitor health = resources.health();
+        health.start(vertx, options.getManagementSnapshotIntervalMs());
+
+        Router router = Router.router(vertx);
+        router.get("/health").handler(ctx -> ctx.response()
+            .putHeader("Content-Type", JSON)
+            .end(health.snapshot().health()));
+        router.get("/ready").handler(ctx -> {
+            HealthMonitor.Snapshot snapshot = health.snapshot();
+            ctx.response()
+                .setStatusCode(snapshot.ready() ? 200 : 503)
+                .putHeader("Content-Type", JSON)
+                .end(snapshot.readiness());
+        });
+        router.get("/stats").handler(ctx -> ctx.response()
+            .putHeader("Content-Type", JSON)
+            .end(health.snapshot().stats()));
+        router.get("/metrics").handler(ctx -> ctx.response()
+            .putHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+            .end(resources.metrics().scrape()));
+
+        int port = options.getManagementPort();
+        return vertx.createHttpServer()
+            .requestHandler(router)
+            .listen(port)
+            .onSuccess(server -> logger.info("Management endpoints on http://localhost:{}/health, /ready, /stats, /metrics",
+                port))
+            .onFailure(throwable -> logger.error("Failed to start the management server on port {}", port, throwable));
+    }
+
+    // Closes the management Vert.x instance, with the health snapshot timer running on it
+    public Future<Void> close() {
+        return vertx.close();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.websocket;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.List;
+
+/**
+ * Encodes server-generated messages for one wire protocol. Every method returns a new buffer
+ * owned by the caller and stamps the message with the current time, except for messages from
+ * the {@link MessageHistory}, which carry their sequence number (0 when not recorded) and the
+ * time they were first sent.
+ */
+public interface MessageCodec {
+    // resumeToken is null when session resumption is disabled; resumed is true when the client
+    // reconnected into an existing session
+    ByteBuf welcome(Peer peer, String resumeToken, boolean resumed, String message);
+
+    ByteBuf pong(String originalTimestamp, long originalEpochMillis);
+
+    ByteBuf broadcast(Peer from, String message, long seq, long timestamp);
+
+    ByteBuf privateMessage(Peer from, String message, long seq, long timestamp);
+
+    ByteBuf privateSent(Peer target, String message);
+
+    ByteBuf echo(String originalMessage);
+
+    // A single USER_JOINED or USER_LEFT event
+    ByteBuf presence(MessageType type, Peer subject, int totalConnections);
+
+    // The joins and leaves collected over one presence window
+    ByteBuf presenceBatch(List<Peer> joined, List<Peer> left, int totalConnections);
+
+    ByteBuf error(String message);
+
+    // Asks the client to reconnect, to another node if it can, after waiting delayMs
+    ByteBuf reconnect(long delayMs, String reason);
+
+    ByteBuf topicMessage(String topic, Peer from, String message);
+
+    // Confirms a SUBSCRIBED or UNSUBSCRIBED request for a topic pattern
+    ByteBuf subscription(MessageType type, String pattern);
+
+    // Ends a replay of the history up to lastSeq; gap means some requested messages had expired
+    ByteBuf replayComplete(long lastSeq, int replayed, boolean gap);
+}
@@ -0,0 +1,25 @@
+package com.example.websocket;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Handles a JSON message type the server has no built-in handler for. Implementations are
+ * found with {@link java.util.ServiceLoader}, by listing them in
+ * {@code META-INF/services/com.example.websocket.MessageHandler}, or registered with
+ * {@link MessageHandlers#register}.
+ *
+ * <p>A handler that may block, for example to query a database, must say so with
+ * {@link #blocking()}. It then runs on a virtual thread instead of the event loop, and the
+ * sender's later messages wait until it returns.
+ */
+public interface MessageHandler {
+    // The "type" field of the messages this handler takes
+    String type();
+
+    default boolean blocking() {
+        return false;
+    }
+
+    // Returns the reply to send back to the sender, or null to send nothing
+    JsonObject handle(Peer sender, JsonObject message) throws Exception;
+}
@@ -0,0 +1,110 @@
+package com.example.websocket;
+
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The custom {@link MessageHandler}s, and the virtual threads their blocking work runs on.
+ *
+ * <p>A non-blocking handler runs inline on the connection's event loop. A blocking one runs on
+ * a fresh virtual thread while the connection's socket is paused, so the connection's next
+ * messages are not delivered until it has finished and their order is kept. TCP backpressure
+ * holds back a client that sends faster than its handlers finish. The reply, or the error, is
+ * written back on the connection's own context. Other connections on the same event loop carry
+ * on meanwhile.
+ *
+ * <p>While paused the connection cannot read pongs, so the {@link HeartbeatMonitor} skips it
+ * until the handler has finished, and its idle time starts again from then.
+ */
+public class MessageHandlers {
+    private static final Logger logger = LoggerFactory.getLogger(MessageHandlers.class);
+    // Types the server handles itself, which custom handlers cannot take over
+    private static final Set<String> BUILT_IN = Set.of(
+        "ping", "broadcast", "private", "echo", "subscribe", "unsubscribe", "publish", "replay");
+
+    private final JsonMessageCodec codec;
+    private final Map<String, MessageHandler> byType = new ConcurrentHashMap<>();
+    private final ExecutorService blockingExecutor =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("message-handler-", 0).factory());
+
+    public MessageHandlers(JsonMessageCodec codec) {
+        this.codec = codec;
+        ServiceLoader.load(MessageHandler.class).forEach(this::register);
+    }
+
+    public void register(MessageHandler handler) {
+        if (BUILT_IN.contains(handler.type())) {
+            throw new IllegalArgumentException("Message type is handled by the server: " + handler.type());
+        }
+        byType.put(handler.type(), handler);
+        logger.info("Registered {} handler for message type '{}'",
+            handler.blocking() ? "blocking" : "non-blocking", handler.type());
+    }
+
+    public MessageHandler get(String type) {
+        return byType.get(type);
+    }
+
+    // Must be called on the connection's context; onFailure is called there too
+    public void dispatch(ClientConnection connection, MessageHandler handler, JsonObject message,
+                         Runnable onFailure) {
+        if (!handler.blocking()) {
+            try {
+                reply(connection, handler.handle(connection, message));
+            } catch (Exception e) {
+                logger.error("Handler for '{}' failed for connection {}", handler.type(), connection.id(), e);
+                onFailure.run();
+            }
+            return;
+        }
+        connection.setHandlerRunning(true);
+        connection.socket().pause();
+        blockingExecutor.execute(() -> {
+            JsonObject reply = null;
+            boolean failed = true;
+            try {
+                reply = handler.handle(connection, message);
+                failed = false;
+            } catch (Throwable t) {
+                logger.error("Handler for '{}' failed for connection {}", handler.type(), connection.id(), t);
+            } finally {
+                // Whatever the handler threw, the socket must not stay paused
+                JsonObject result = reply;
+                boolean succeeded = !failed;
+                connection.context().runOnContext(v -> {
+                    try {
+                        if (succeeded) {
+                            reply(connection, result);
+                        } else {
+                            onFailure.run();
+                        }
+                    } finally {
+                        resume(connection);
+                    }
+                });
+            }
+        });
+    }
+
+    private void reply(ClientConnection connection, JsonObject reply) {
+        if (reply != null && !connection.isClosed()) {
+            connection.send(codec.handlerReply(reply));
+        }
+    }
+
+    private static void resume(ClientConnection connection) {
+        connection.setHandlerRunning(false);
+        connection.touch();
+        if (!connection.isClosed()) {
+            connection.socket().resume();
+        }
+    }
+}
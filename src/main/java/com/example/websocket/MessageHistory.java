@@ -0,0 +1,584 @@
+package com.example.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of the broadcast and private messages delivered by this node, so clients
+ * that reconnect can replay what they missed.
+ *
+ * <p>Every message gets the next sequence number. The log is split into fixed-size segment
+ * files named after the first sequence they hold, and each segment is memory-mapped, so an
+ * append is a copy into the page cache and survives a crash of the process. Whole segments are
+ * deleted, oldest first, once the log outgrows its size budget or their newest message is older
+ * than the retention period.
+ *
+ * <p>Appends come from every event loop and take no lock. An append claims its sequence number
+ * and its bytes in the active segment together with one compare-and-set, so sequence order and
+ * file order agree, and then copies the record into its own slice while other loops copy theirs.
+ * Everything that touches the file system runs on a dedicated writer thread instead: creating
+ * and mapping the next segment ahead of time, forcing a full segment to disk and deleting old
+ * ones. When the active segment fills up, an append swaps in the segment the writer prepared,
+ * which takes a short lock but no I/O. If the writer has fallen so far behind that none is
+ * ready, the message is not recorded.
+ *
+ * <p>Record layout, padded to 8 bytes, after a 4-byte length that is written last so a record
+ * that is claimed but not yet written, or torn by a crash, reads as the end of the log:
+ * <pre>
+ *   seq:i64 timestamp:i64 type:u8 from:str target:str message:str   (str = i32 length + UTF-8)
+ * </pre>
+ */
+public class MessageHistory {
+    private static final Logger logger = LoggerFactory.getLogger(MessageHistory.class);
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int LENGTH_BYTES = 4;
+    private static final int FIXED_RECORD_BYTES = 8 + 8 + 1 + 3 * 4;
+    // Records start 8-byte aligned, so their length can be published with release semantics
+    private static final int RECORD_ALIGNMENT = 8;
+    private static final long RETENTION_CHECK_INTERVAL_MS = 60_000;
+    private static final long SPARE_RETRY_MS = 1000;
+    private static final long SEAL_WAIT_MS = 1000;
+    private static final VarHandle LENGTH =
+        MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    // Segments by first sequence; the last one is being appended to
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    // Full segments for the writer thread to force to disk
+    private final BlockingQueue<Segment> sealed = new LinkedBlockingQueue<>();
+    // Messages dropped because no next segment was ready, reported by the writer thread
+    private final LongAdder unrecorded = new LongAdder();
+    private volatile Segment active;
+    // The next segment, mapped ahead by the writer thread; guarded by this
+    private Segment spare;
+    private Thread writer;
+    private volatile boolean closed;
+
+    public MessageHistory(ServerOptions options) {
+        this.enabled = options.isHistoryEnabled();
+        this.directory = Path.of(options.getHistoryDirectory());
+        this.segmentSize = options.getHistorySegmentSize();
+        this.maxBytes = options.getHistoryMaxBytes();
+        this.maxAgeMillis = options.getHistoryMaxAgeSeconds() * 1000L;
+        if (enabled) {
+            try {
+                long lastSeq = recover();
+                // Recovered segments are only read; appends start a segment of their own
+                Segment first = Segment.open(directory.resolve(segmentName(lastSeq + 1)), segmentSize);
+                first.firstSeq = lastSeq + 1;
+                segments.put(first.firstSeq, first);
+                active = first;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open message history in " + directory, e);
+            }
+            writer = new Thread(this::maintain, "history-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Stops the writer thread and forces every segment still holding unforced messages to disk.
+    // Blocks, so it must not be called on an event loop.
+    public void close() {
+        if (!enabled || closed) {
+            return;
+        }
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Segment full = sealed.poll(); full != null; full = sealed.poll()) {
+            full.buffer.force();
+        }
+        active.buffer.force();
+    }
+
+    // Sequence of the newest message, or 0 if there is none
+    public long lastSeq() {
+        Segment segment = active;
+        return segment != null ? segment.firstSeq + segment.count() - 1 : 0;
+    }
+
+    // Records a message and returns its sequence number; returns 0 when history is disabled or
+    // the message cannot be stored. Safe to call from any thread and never blocks on disk I/O.
+    public long append(MessageType type, String fromId, String targetId, String message, long timestamp) {
+        if (!enabled) {
+            return 0;
+        }
+        byte[] from = bytes(fromId);
+        byte[] target = bytes(targetId);
+        byte[] text = bytes(message);
+        int length = FIXED_RECORD_BYTES + from.length + target.length + text.length;
+        int size = align(LENGTH_BYTES + length);
+        if (size > segmentSize) {
+            logger.warn("Message of {} bytes is larger than a history segment, not recording it", length);
+            return 0;
+        }
+        while (true) {
+            Segment segment = active;
+            long claimed = segment.claim(size);
+            if (claimed < 0) {
+                if (!advance(segment)) {
+                    unrecorded.increment();
+                    return 0;
+                }
+                continue;
+            }
+            long seq = segment.firstSeq + Segment.count(claimed);
+            int start = Segment.offset(claimed);
+            ByteBuffer buffer = segment.buffer;
+            int position = start + LENGTH_BYTES;
+            buffer.putLong(position, seq);
+            buffer.putLong(position + 8, timestamp);
+            buffer.put(position + 16, (byte) type.code());
+            position = putString(buffer, position + 17, from);
+            position = putString(buffer, position, target);
+            putString(buffer, position, text);
+            segment.publish(start, length, timestamp);
+            return seq;
+        }
+    }
+
+    // Reads messages with a sequence above afterSeq, oldest first
+    public Cursor cursor(long afterSeq) {
+        return new Cursor(afterSeq);
+    }
+
+    // Opens the existing segments for reading and returns the last sequence they hold
+    private long recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList();
+        }
+        for (Path file : files) {
+            Segment segment = Segment.open(file, Math.max(segmentSize, (int) Files.size(file)));
+            segment.scan();
+            if (segment.count() == 0) {
+                Files.delete(file);
+                continue;
+            }
+            // Keyed by the sequence it holds, so a spare that was never renamed still sorts right
+            segments.put(segment.firstSeq, segment);
+        }
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        Segment newest = segments.lastEntry().getValue();
+        long lastSeq = newest.firstSeq + newest.count() - 1;
+        logger.info("Message history recovered {} segment(s) up to sequence {}", segments.size(), lastSeq);
+        return lastSeq;
+    }
+
+    // Replaces a full active segment with the spare. Returns false if the segment is still
+    // active because no spare is ready yet.
+    private synchronized boolean advance(Segment full) {
+        if (active != full) {
+            return true;
+        }
+        full.seal();
+        Segment next = spare;
+        if (next == null) {
+            return false;
+        }
+        spare = null;
+        next.firstSeq = full.firstSeq + full.count();
+        segments.put(next.firstSeq, next);
+        active = next;
+        sealed.add(full);
+        return true;
+    }
+
+    private synchronized void offerSpare(Segment segment) {
+        spare = segment;
+        Segment current = active;
+        if (current.isSealed()) {
+            // Appends found the active segment full while no spare was ready
+            advance(current);
+        }
+    }
+
+    private synchronized boolean needsSpare() {
+        return spare == null;
+    }
+
+    // The writer thread: maps the next segment ahead, forces full ones and applies retention
+    private void maintain() {
+        long nextRetentionCheck = 0;
+        while (!closed) {
+            try {
+                if (needsSpare()) {
+                    prepareSpare();
+                }
+                Segment full = sealed.poll(needsSpare() ? SPARE_RETRY_MS : RETENTION_CHECK_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+                if (full != null) {
+                    try {
+                        full.awaitWriters(SEAL_WAIT_MS);
+                    } finally {
+                        // Also when interrupted by close(), which no longer sees this segment
+                        full.buffer.force();
+                    }
+                }
+                long dropped = unrecorded.sumThenReset();
+                if (dropped > 0) {
+                    logger.warn("{} message(s) were not recorded in history while the next segment was prepared",
+                        dropped);
+                }
+                long now = System.currentTimeMillis();
+                if (full != null || now >= nextRetentionCheck) {
+                    // Segments also age out on a server that is not filling new ones
+                    nextRetentionCheck = now + RETENTION_CHECK_INTERVAL_MS;
+                    enforceRetention();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!closed) {
+                    logger.warn("Message history maintenance failed", e);
+                }
+            }
+        }
+    }
+
+    private void prepareSpare() {
+        // Its first sequence is not known yet; the file is renamed once it is
+        Path file = directory.resolve("next-" + System.nanoTime() + SEGMENT_SUFFIX);
+        try {
+            offerSpare(Segment.open(file, segmentSize));
+        } catch (IOException e) {
+            if (!closed) {
+                logger.error("Failed to prepare the next history segment", e);
+            }
+        }
+    }
+
+    // Deletes old segments; the active segment is always kept
+    private void enforceRetention() {
+        renameSegments();
+        long totalBytes = (long) segments.size() * segmentSize;
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        while (segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == active || (totalBytes <= maxBytes && oldest.lastTimestamp >= cutoff)) {
+                break;
+            }
+            segments.remove(oldest.firstSeq);
+            totalBytes -= segmentSize;
+            try {
+                // Readers still holding the mapping can finish; the pages go once it is collected
+                Files.deleteIfExists(oldest.file);
+            } catch (IOException e) {
+                logger.warn("Failed to delete history segment {}", oldest.file, e);
+            }
+        }
+    }
+
+    // Names segments that became active after their first sequence, so the directory lists in order
+    private void renameSegments() {
+        for (Segment segment : segments.values()) {
+            Path named = directory.resolve(segmentName(segment.firstSeq));
+            if (!segment.file.equals(named)) {
+                try {
+                    // The mapping is unaffected by the move
+                    segment.file = Files.move(segment.file, named, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    logger.warn("Failed to rename history segment {}", segment.file, e);
+                }
+            }
+        }
+    }
+
+    private static String segmentName(long firstSeq) {
+        return String.format("%020d%s", firstSeq, SEGMENT_SUFFIX);
+    }
+
+    private static int align(int size) {
+        return (size + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    // Writes at an absolute position, so appends on other threads are not disturbed; returns
+    // the position after the string
+    private static int putString(ByteBuffer buffer, int position, byte[] value) {
+        buffer.putInt(position, value.length);
+        buffer.put(position + 4, value);
+        return position + 4 + value.length;
+    }
+
+    /**
+     * A message read back from the log.
+     */
+    public static final class Entry {
+        private final long seq;
+        private final long timestamp;
+        private final MessageType type;
+        private final String fromId;
+        private final String targetId;
+        private final String message;
+
+        Entry(long seq, long timestamp, MessageType type, String fromId, String targetId, String message) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.type = type;
+            this.fromId = fromId;
+            this.targetId = targetId;
+            this.message = message;
+        }
+
+        public long seq() {
+            return seq;
+        }
+
+        public long timestamp() {
+            return timestamp;
+        }
+
+        public MessageType type() {
+            return type;
+        }
+
+        public String fromId() {
+            return fromId;
+        }
+
+        // Null for broadcasts
+        public String targetId() {
+            return targetId;
+        }
+
+        public String message() {
+            return message;
+        }
+    }
+
+    /**
+     * A position in the log that reads forward in batches. Not thread-safe.
+     */
+    public final class Cursor {
+        private long afterSeq;
+        private Segment segment;
+        private int position;
+        private boolean gap;
+
+        private Cursor(long afterSeq) {
+            this.afterSeq = afterSeq;
+            Map.Entry<Long, Segment> first = segments.floorEntry(afterSeq + 1);
+            if (first == null) {
+                first = segments.firstEntry();
+                // Messages the client missed have already been deleted
+                gap = first != null && first.getKey() > afterSeq + 1;
+            }
+            segment = first != null ? first.getValue() : null;
+        }
+
+        // Whether messages after the requested sequence were lost to retention
+        public boolean gap() {
+            return gap;
+        }
+
+        // Sequence of the last message read so far
+        public long position() {
+            return afterSeq;
+        }
+
+        // Up to max messages, oldest first; an empty list means the cursor has caught up
+        public List<Entry> next(int max) {
+            List<Entry> batch = new ArrayList<>(Math.min(max, 64));
+            long cutoff = System.currentTimeMillis() - maxAgeMillis;
+            while (segment != null && batch.size() < max) {
+                int length = segment.lengthAt(position);
+                if (length == 0) {
+                    if (!segment.readThrough(position)) {
+                        // Caught up, or the next record is still being written; the next call picks it up
+                        break;
+                    }
+                    Map.Entry<Long, Segment> next = segments.higherEntry(segment.firstSeq);
+                    if (next == null) {
+                        break;
+                    }
+                    segment = next.getValue();
+                    position = 0;
+                    continue;
+                }
+                ByteBuffer view = segment.buffer.duplicate();
+                view.position(position + LENGTH_BYTES);
+                position += align(LENGTH_BYTES + length);
+                long seq = view.getLong();
+                if (seq <= afterSeq) {
+                    continue;
+                }
+                long timestamp = view.getLong();
+                MessageType type = MessageType.fromCode(view.get() & 0xFF);
+                String fromId = readString(view);
+                String targetId = readString(view);
+                String message = Objects.requireNonNullElse(readString(view), "");
+                afterSeq = seq;
+                if (timestamp >= cutoff) {
+                    batch.add(new Entry(seq, timestamp, type, fromId, targetId, message));
+                } else {
+                    gap = true;
+                }
+            }
+            return batch;
+        }
+
+        private String readString(ByteBuffer view) {
+            int length = view.getInt();
+            if (length == 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Segment {
+        private static final long SEALED = 1L << 63;
+
+        final MappedByteBuffer buffer;
+        // Renamed by the writer thread once the first sequence is known
+        volatile Path file;
+        long firstSeq;
+        // Records claimed << 32 | offset of the next record, with SEALED once the segment is full
+        private final AtomicLong state = new AtomicLong();
+        // Records whose length has been published
+        private final AtomicInteger written = new AtomicInteger();
+        volatile long lastTimestamp;
+
+        private Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path file, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed
+                return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        static int count(long state) {
+            return (int) ((state & ~SEALED) >>> 32);
+        }
+
+        static int offset(long state) {
+            return (int) state;
+        }
+
+        // Reserves size bytes for the next record and returns the state it was claimed from, or -1
+        // if the record does not fit
+        long claim(int size) {
+            while (true) {
+                long current = state.get();
+                if ((current & SEALED) != 0 || offset(current) + size > buffer.capacity()) {
+                    return -1;
+                }
+                if (state.compareAndSet(current, current + (1L << 32) + size)) {
+                    return current;
+                }
+            }
+        }
+
+        // Makes a record written at start visible to readers
+        void publish(int start, int length, long timestamp) {
+            lastTimestamp = timestamp;
+            LENGTH.setRelease(buffer, start, length);
+            written.incrementAndGet();
+        }
+
+        int count() {
+            return count(state.get());
+        }
+
+        void seal() {
+            state.getAndUpdate(current -> current | SEALED);
+        }
+
+        boolean isSealed() {
+            return (state.get() & SEALED) != 0;
+        }
+
+        // Length of the record at position, or 0 if none has been published there yet
+        int lengthAt(int position) {
+            return position + LENGTH_BYTES <= buffer.capacity() ? (int) LENGTH.getAcquire(buffer, position) : 0;
+        }
+
+        // Whether a reader at position has seen every record this segment will ever hold
+        boolean readThrough(int position) {
+            long current = state.get();
+            return (current & SEALED) != 0 && position >= offset(current);
+        }
+
+        // Waits, for at most timeoutMs, until appends that claimed space before the seal are written
+        void awaitWriters(long timeoutMs) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (written.get() < count() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+
+        // Finds the written records after a restart; the segment is only read from then on
+        void scan() {
+            int position = 0;
+            int count = 0;
+            while (position + LENGTH_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length < FIXED_RECORD_BYTES || position + LENGTH_BYTES + length > buffer.capacity()) {
+                    break;
+                }
+                if (count == 0) {
+                    firstSeq = buffer.getLong(position + LENGTH_BYTES);
+                }
+                lastTimestamp = buffer.getLong(position + LENGTH_BYTES + 8);
+                count++;
+                position += align(LENGTH_BYTES + length);
+            }
+            state.set(SEALED | (long) count << 32 | position);
+            written.set(count);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.websocket;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Message types shared by the JSON and binary protocols. The code is the type byte used by
+ * {@link BinaryMessageCodec}; the name is the JSON "type" value.
+ */
+public enum MessageType {
+    PING(0x01, "ping"),
+    PONG(0x02, "pong"),
+    BROADCAST(0x03, "broadcast"),
+    PRIVATE(0x04, "private"),
+    PRIVATE_SENT(0x05, "private_sent"),
+    ECHO(0x06, "echo"),
+    WELCOME(0x07, "welcome"),
+    USER_JOINED(0x08, "user_joined"),
+    USER_LEFT(0x09, "user_left"),
+    ERROR(0x0A, "error"),
+    SUBSCRIBE(0x0B, "subscribe"),
+    UNSUBSCRIBE(0x0C, "unsubscribe"),
+    PUBLISH(0x0D, "publish"),
+    TOPIC_MESSAGE(0x0E, "topic_message"),
+    SUBSCRIBED(0x0F, "subscribed"),
+    UNSUBSCRIBED(0x10, "unsubscribed"),
+    REPLAY(0x11, "replay"),
+    REPLAY_COMPLETE(0x12, "replay_complete"),
+    PRESENCE(0x13, "presence"),
+    RECONNECT(0x14, "reconnect");
+
+    private static final MessageType[] BY_CODE = new MessageType[256];
+    private static final Map<String, MessageType> BY_JSON_NAME = new HashMap<>();
+
+    static {
+        for (MessageType type : values()) {
+            BY_CODE[type.code] = type;
+            BY_JSON_NAME.put(type.jsonName, type);
+        }
+    }
+
+    private final int code;
+    private final String jsonName;
+
+    MessageType(int code, String jsonName) {
+        this.code = code;
+        this.jsonName = jsonName;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    public String jsonName() {
+        return jsonName;
+    }
+
+    public static MessageType fromCode(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    public static MessageType fromJsonName(String jsonName) {
+        return BY_JSON_NAME.get(jsonName);
+    }
+}
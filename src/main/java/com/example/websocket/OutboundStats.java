@@ -0,0 +1,80 @@
+package com.example.websocket;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-wide counters for outbound backpressure, shared by all connections.
+ */
+public class OutboundStats {
+    private final AtomicLong queuedFrames = new AtomicLong();
+    private final LongAdder droppedFrames = new LongAdder();
+    private final LongAdder slowConsumerDisconnects = new LongAdder();
+    private final LongAdder framesWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder framesCompressed = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    void queued(int delta) {
+        queuedFrames.addAndGet(delta);
+    }
+
+    void dropped() {
+        droppedFrames.increment();
+    }
+
+    void disconnected() {
+        slowConsumerDisconnects.increment();
+    }
+
+    void written(int bytes) {
+        framesWritten.increment();
+        bytesWritten.add(bytes);
+    }
+
+    void compressed(int savedBytes) {
+        framesCompressed.increment();
+        bytesSaved.add(savedBytes);
+    }
+
+    public long queuedFrames() {
+        return queuedFrames.get();
+    }
+
+    public long droppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    public long slowConsumerDisconnects() {
+        return slowConsumerDisconnects.sum();
+    }
+
+    public long framesWritten() {
+        return framesWritten.sum();
+    }
+
+    public long bytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long framesCompressed() {
+        return framesCompressed.sum();
+    }
+
+    public long bytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    public JsonObject toJson() {
+        return new JsonObject()
+            .put("queuedFrames", queuedFrames())
+            .put("droppedFrames", droppedFrames())
+            .put("slowConsumerDisconnects", slowConsumerDisconnects())
+            .put("framesWritten", framesWritten())
+            .put("bytesWritten", bytesWritten())
+            .put("framesCompressed", framesCompressed())
+            .put("bytesSaved", bytesSaved());
+    }
+}
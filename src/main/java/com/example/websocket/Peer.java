@@ -0,0 +1,11 @@
+package com.example.websocket;
+
+/**
+ * Identity of a connection as seen on the wire: the string id used by the JSON protocol and
+ * the small interned handle used by the binary protocol.
+ */
+public interface Peer {
+    String id();
+
+    int handle();
+}
@@ -0,0 +1,89 @@
+package com.example.websocket;
+
+import io.vertx.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Collects joins and leaves, local and from other cluster nodes, and broadcasts them as one
+ * {@link MessageType#PRESENCE} delta per window instead of one frame per event, so a burst of
+ * N joins costs one frame per client rather than N. A join and a leave of the same connection
+ * within a window cancel out. A window of 0 sends every event on its own as
+ * {@link MessageType#USER_JOINED} or {@link MessageType#USER_LEFT}, as older clients expect.
+ */
+public class PresenceAggregator {
+    private final BroadcastEngine broadcastEngine;
+    private final IntSupplier totalConnections;
+    private final long windowMs;
+    private final int maxBatchSize;
+    private Map<String, Peer> joined = new LinkedHashMap<>();
+    private Map<String, Peer> left = new LinkedHashMap<>();
+    private Vertx vertx;
+    private long flushTimer = -1;
+
+    public PresenceAggregator(ServerOptions options, BroadcastEngine broadcastEngine, IntSupplier totalConnections) {
+        this.broadcastEngine = broadcastEngine;
+        this.totalConnections = totalConnections;
+        this.windowMs = options.getPresenceWindowMs();
+        this.maxBatchSize = options.getPresenceMaxBatchSize();
+    }
+
+    public void joined(Peer subject, Vertx vertx) {
+        record(MessageType.USER_JOINED, subject, vertx);
+    }
+
+    public void left(Peer subject, Vertx vertx) {
+        record(MessageType.USER_LEFT, subject, vertx);
+    }
+
+    private void record(MessageType type, Peer subject, Vertx vertx) {
+        if (windowMs <= 0) {
+            int total = totalConnections.getAsInt();
+            int excludeHandle = type == MessageType.USER_JOINED ? subject.handle() : ConnectionRegistry.NO_HANDLE;
+            broadcastEngine.broadcast(codec -> codec.presence(type, subject, total), excludeHandle, true);
+            return;
+        }
+        boolean full;
+        synchronized (this) {
+            Map<String, Peer> same = type == MessageType.USER_JOINED ? joined : left;
+            Map<String, Peer> opposite = type == MessageType.USER_JOINED ? left : joined;
+            if (opposite.remove(subject.id()) == null) {
+                same.put(subject.id(), subject);
+            }
+            full = joined.size() + left.size() >= maxBatchSize;
+            if (!full && flushTimer < 0) {
+                this.vertx = vertx;
+                flushTimer = vertx.setTimer(windowMs, id -> flush());
+            }
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    // Sends whatever the current window collected
+    public void flush() {
+        List<Peer> joinedPeers;
+        List<Peer> leftPeers;
+        synchronized (this) {
+            if (flushTimer >= 0) {
+                vertx.cancelTimer(flushTimer);
+                flushTimer = -1;
+            }
+            if (joined.isEmpty() && left.isEmpty()) {
+                return;
+            }
+            joinedPeers = new ArrayList<>(joined.values());
+            leftPeers = new ArrayList<>(left.values());
+            joined = new LinkedHashMap<>();
+            left = new LinkedHashMap<>();
+        }
+        int total = totalConnections.getAsInt();
+        broadcastEngine.broadcast(codec -> codec.presenceBatch(joinedPeers, leftPeers, total),
+            ConnectionRegistry.NO_HANDLE, true);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.websocket;
+
+/**
+ * What happens to an inbound message that exceeds a rate limit.
+ */
+public enum RateLimitAction {
+    // Drop the message and answer with an error frame
+    REJECT("reject"),
+    // Close the connection
+    DISCONNECT("disconnect");
+
+    private final String configName;
+
+    RateLimitAction(String configName) {
+        this.configName = configName;
+    }
+
+    public String configName() {
+        return configName;
+    }
+
+    public static RateLimitAction fromConfig(String value) {
+        for (RateLimitAction action : values()) {
+            if (action.configName.equalsIgnoreCase(value) || action.name().equalsIgnoreCase(value)) {
+                return action;
+            }
+        }
+        throw new IllegalArgumentException("Unknown rate limit action: " + value);
+    }
+}
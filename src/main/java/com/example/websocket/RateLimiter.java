@@ -0,0 +1,127 @@
+package com.example.websocket;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token-bucket limits on inbound messages: one bucket per connection for all its messages,
+ * optional buckets per connection and message type, and one server-wide budget for the
+ * messages that fan out to many connections (broadcasts and publishes).
+ *
+ * <p>Buckets are kept in the equivalent virtual-scheduling form: a bucket is the time at which
+ * it will be full again, and a message is admitted if charging it would not push that time
+ * further ahead than the bucket's burst allows. A bucket is therefore one long. A connection's
+ * buckets live in a plain array that only its event loop touches; the global bucket is an
+ * {@link AtomicLong} updated by compare-and-set. Admitting a message takes no lock and
+ * allocates nothing.
+ *
+ * <p>A message is charged only once every bucket it passes through has room for it, so a
+ * refused message uses up none of the sender's allowance.
+ */
+public class RateLimiter {
+    // Slot 0 is the connection-wide bucket, then one per message type, then general messages
+    static final int SLOTS = MessageType.values().length + 2;
+    private static final int CONNECTION_SLOT = 0;
+    private static final int GENERAL_SLOT = SLOTS - 1;
+
+    private final boolean enabled;
+    private final RateLimitAction action;
+    // Nanoseconds one message costs, and how far ahead a bucket may run; 0 means no limit
+    private final long[] intervalNanos = new long[SLOTS];
+    private final long[] toleranceNanos = new long[SLOTS];
+    private final long globalIntervalNanos;
+    private final long globalToleranceNanos;
+    private final AtomicLong globalFullAt = new AtomicLong(Long.MIN_VALUE);
+
+    public RateLimiter(ServerOptions options) {
+        this.enabled = options.isRateLimitEnabled();
+        this.action = options.getRateLimitAction();
+        configure(CONNECTION_SLOT, options.getRateLimitMessagesPerSecond(), options.getRateLimitBurst());
+        for (Map.Entry<String, ServerOptions.Rate> entry : options.getRateLimitPerType().entrySet()) {
+            MessageType type = MessageType.fromJsonName(entry.getKey());
+            int slot = type != null ? type.ordinal() + 1 : "message".equals(entry.getKey()) ? GENERAL_SLOT : -1;
+            if (slot < 0) {
+                throw new IllegalArgumentException("Unknown message type in rateLimit.perType: " + entry.getKey());
+            }
+            configure(slot, entry.getValue().perSecond(), entry.getValue().burst());
+        }
+        this.globalIntervalNanos = interval(options.getRateLimitGlobalBroadcastsPerSecond());
+        this.globalToleranceNanos = globalIntervalNanos * Math.max(options.getRateLimitGlobalBroadcastBurst(), 1);
+    }
+
+    public RateLimitAction action() {
+        return action;
+    }
+
+    // State for a new connection's buckets
+    public static long[] newConnectionState() {
+        long[] state = new long[SLOTS];
+        Arrays.fill(state, Long.MIN_VALUE);
+        return state;
+    }
+
+    // Admits or refuses one message of the given type (null for general messages) at time now,
+    // in System.nanoTime() terms. Must be called on the connection's context.
+    public Verdict admit(ClientConnection connection, MessageType type, long now) {
+        if (!enabled) {
+            return Verdict.ADMITTED;
+        }
+        long[] state = connection.rateLimitState();
+        int typeSlot = type != null ? type.ordinal() + 1 : GENERAL_SLOT;
+        if (!fits(state, CONNECTION_SLOT, now) || !fits(state, typeSlot, now)) {
+            return Verdict.CONNECTION_LIMITED;
+        }
+        // Charged last, as other loops share it; the connection's own buckets cannot change meanwhile
+        if ((type == MessageType.BROADCAST || type == MessageType.PUBLISH) && !takeGlobal(now)) {
+            return Verdict.GLOBALLY_LIMITED;
+        }
+        charge(state, CONNECTION_SLOT, now);
+        charge(state, typeSlot, now);
+        return Verdict.ADMITTED;
+    }
+
+    private boolean fits(long[] state, int slot, long now) {
+        long interval = intervalNanos[slot];
+        return interval == 0 || Math.max(state[slot], now) + interval - now <= toleranceNanos[slot];
+    }
+
+    private void charge(long[] state, int slot, long now) {
+        long interval = intervalNanos[slot];
+        if (interval != 0) {
+            state[slot] = Math.max(state[slot], now) + interval;
+        }
+    }
+
+    private boolean takeGlobal(long now) {
+        if (globalIntervalNanos == 0) {
+            return true;
+        }
+        while (true) {
+            long fullAt = globalFullAt.get();
+            long charged = Math.max(fullAt, now) + globalIntervalNanos;
+            if (charged - now > globalToleranceNanos) {
+                return false;
+            }
+            if (globalFullAt.compareAndSet(fullAt, charged)) {
+                return true;
+            }
+        }
+    }
+
+    private void configure(int slot, double perSecond, int burst) {
+        intervalNanos[slot] = interval(perSecond);
+        toleranceNanos[slot] = intervalNanos[slot] * Math.max(burst, 1);
+    }
+
+    private static long interval(double perSecond) {
+        return perSecond > 0 ? Math.max((long) (TimeUnit.SECONDS.toNanos(1) / perSecond), 1) : 0;
+    }
+
+    public enum Verdict {
+        ADMITTED,
+        CONNECTION_LIMITED,
+        GLOBALLY_LIMITED
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.websocket;
+
+/**
+ * A connection held by another cluster node. It gets a handle from this node's registry so
+ * binary clients here can address it like a local connection.
+ */
+public class RemotePeer implements Peer {
+    private final String id;
+    private final int handle;
+    private final String nodeId;
+
+    public RemotePeer(String id, int handle, String nodeId) {
+        this.id = id;
+        this.handle = handle;
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public int handle() {
+        return handle;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+}
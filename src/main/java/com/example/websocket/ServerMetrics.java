@@ -0,0 +1,194 @@
+package com.example.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import io.vertx.core.Context;
+import io.vertx.core.impl.ContextInternal;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server metrics, scraped in Prometheus text format from {@code /metrics}. Meters on the message
+ * path are registered up front and found by array index, so recording a message is a handful of
+ * atomic updates with no lookup and no allocation.
+ */
+public class ServerMetrics {
+    // Message types clients send; anything else is counted as a general message
+    private static final Set<MessageType> INBOUND_TYPES = EnumSet.of(MessageType.PING, MessageType.BROADCAST,
+        MessageType.PRIVATE, MessageType.ECHO, MessageType.SUBSCRIBE, MessageType.UNSUBSCRIBE, MessageType.PUBLISH,
+        MessageType.REPLAY);
+    private static final String GENERAL_MESSAGE = "message";
+
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private final Counter[] messagesIn = new Counter[MessageType.values().length];
+    private final Timer[] handlerDuration = new Timer[MessageType.values().length];
+    private final Counter generalMessagesIn;
+    private final Timer generalHandlerDuration;
+    private final Counter bytesIn;
+    private final Counter parseFailures;
+    private final Timer broadcastDuration;
+    private final DistributionSummary broadcastRecipients;
+    private final Counter sessionsResumed;
+    private final Counter connectionRateLimited;
+    private final Counter globalRateLimited;
+
+    public ServerMetrics(ConnectionRegistry connections, OutboundStats outboundStats, TrafficLog trafficLog,
+                         SessionStore sessions, HeartbeatMonitor heartbeats) {
+        for (MessageType type : INBOUND_TYPES) {
+            messagesIn[type.ordinal()] = messagesInCounter(type.jsonName());
+            handlerDuration[type.ordinal()] = handlerTimer(type.jsonName());
+        }
+        generalMessagesIn = messagesInCounter(GENERAL_MESSAGE);
+        generalHandlerDuration = handlerTimer(GENERAL_MESSAGE);
+        bytesIn = Counter.builder("websocket.bytes.in")
+            .description("Payload bytes received from clients")
+            .baseUnit("bytes")
+            .register(registry);
+        parseFailures = Counter.builder("websocket.parse.failures")
+            .description("Inbound messages that could not be decoded or handled")
+            .register(registry);
+        broadcastDuration = Timer.builder("websocket.broadcast.duration")
+            .description("Time to encode a broadcast and hand it to every event loop")
+            .publishPercentiles(0.5, 0.9, 0.99)
+            .publishPercentileHistogram()
+            .register(registry);
+        broadcastRecipients = DistributionSummary.builder("websocket.broadcast.recipients")
+            .description("Connections a broadcast was addressed to")
+            .register(registry);
+        connectionRateLimited = rateLimitedCounter("connection");
+        globalRateLimited = rateLimitedCounter("global");
+        sessionsResumed = Counter.builder("websocket.sessions.resumed")
+            .description("Reconnects that resumed a session instead of joining anew")
+            .register(registry);
+
+        Gauge.builder("websocket.connections", connections, ConnectionRegistry::size)
+            .description("Open WebSocket connections on this node")
+            .register(registry);
+        Gauge.builder("websocket.sessions.detached", sessions, SessionStore::detachedCount)
+            .description("Sessions held for a client that may still resume them")
+            .register(registry);
+        FunctionCounter.builder("websocket.connections.reaped", heartbeats, HeartbeatMonitor::reapedConnections)
+            .description("Connections closed after going quiet for the idle timeout")
+            .register(registry);
+        Gauge.builder("websocket.outbound.queued.frames", outboundStats, OutboundStats::queuedFrames)
+            .description("Frames waiting in connection backlogs")
+            .register(registry);
+        FunctionCounter.builder("websocket.outbound.dropped.frames", outboundStats, OutboundStats::droppedFrames)
+            .description("Frames dropped by the slow consumer policy")
+            .register(registry);
+        FunctionCounter.builder("websocket.outbound.slow.consumer.disconnects", outboundStats,
+                OutboundStats::slowConsumerDisconnects)
+            .description("Connections closed by the slow consumer policy")
+            .register(registry);
+        FunctionCounter.builder("websocket.frames.out", outboundStats, OutboundStats::framesWritten)
+            .description("Frames written to client sockets")
+            .register(registry);
+        FunctionCounter.builder("websocket.bytes.out", outboundStats, OutboundStats::bytesWritten)
+            .description("Payload bytes written to client sockets")
+            .baseUnit("bytes")
+            .register(registry);
+        FunctionCounter.builder("websocket.frames.compressed", outboundStats, OutboundStats::framesCompressed)
+            .description("Frames written with permessage-deflate")
+            .register(registry);
+        FunctionCounter.builder("websocket.compression.saved", outboundStats, OutboundStats::bytesSaved)
+            .description("Payload bytes saved by permessage-deflate")
+            .baseUnit("bytes")
+            .register(registry);
+        FunctionCounter.builder("websocket.traffic.log.dropped", trafficLog, TrafficLog::droppedEvents)
+            .description("Sampled traffic log events dropped because the log queue was full")
+            .register(registry);
+    }
+
+    private Counter messagesInCounter(String type) {
+        return Counter.builder("websocket.messages.in")
+            .description("Messages received from clients")
+            .tag("type", type)
+            .register(registry);
+    }
+
+    private Counter rateLimitedCounter(String scope) {
+        return Counter.builder("websocket.rate.limited")
+            .description("Inbound messages refused by a rate limit")
+            .tag("scope", scope)
+            .register(registry);
+    }
+
+    private Timer handlerTimer(String type) {
+        return Timer.builder("websocket.handler.duration")
+            .description("Time to handle one inbound message")
+            .tag("type", type)
+            .publishPercentiles(0.5, 0.9, 0.99)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    // A null type, or one clients do not send, counts as a general message
+    public void messageHandled(MessageType type, long nanos) {
+        int index = type != null ? type.ordinal() : -1;
+        if (index >= 0 && messagesIn[index] != null) {
+            messagesIn[index].increment();
+            handlerDuration[index].record(nanos, TimeUnit.NANOSECONDS);
+        } else {
+            generalMessagesIn.increment();
+            generalHandlerDuration.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void bytesIn(int bytes) {
+        bytesIn.increment(bytes);
+    }
+
+    public void parseFailure() {
+        parseFailures.increment();
+    }
+
+    public void rateLimited(RateLimiter.Verdict verdict) {
+        (verdict == RateLimiter.Verdict.GLOBALLY_LIMITED ? globalRateLimited : connectionRateLimited).increment();
+    }
+
+    public void sessionResumed() {
+        sessionsResumed.increment();
+    }
+
+    public void broadcast(int recipients, long nanos) {
+        broadcastRecipients.record(recipients);
+        broadcastDuration.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Registers gauges for the event loop behind context, named after its thread; hand the
+    // result back to unbindEventLoop
+    public List<Meter> bindEventLoop(Context context, String eventLoop, ConnectionRegistry connections) {
+        return List.of(
+            Gauge.builder("websocket.eventloop.connections", () -> connections.ownedBy(context).size())
+                .description("Open connections owned by the event loop")
+                .tag("eventLoop", eventLoop)
+                .register(registry),
+            Gauge.builder("websocket.eventloop.pending.tasks", () -> pendingTasks(context))
+                .description("Tasks queued on the event loop")
+                .tag("eventLoop", eventLoop)
+                .register(registry));
+    }
+
+    public void unbindEventLoop(List<Meter> meters) {
+        meters.forEach(registry::remove);
+    }
+
+    private static int pendingTasks(Context context) {
+        Object eventLoop = ((ContextInternal) context).nettyEventLoop();
+        return eventLoop instanceof SingleThreadEventExecutor ? ((SingleThreadEventExecutor) eventLoop).pendingTasks() : 0;
+    }
+
+    public String scrape() {
+        return registry.scrape();
+    }
+}
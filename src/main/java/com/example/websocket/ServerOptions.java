@@ -0,0 +1,659 @@
+package com.example.websocket;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Server settings, read from the verticle's deployment config. Every key is optional.
+ */
+public class ServerOptions {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_INSTANCES = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_OUTBOUND_QUEUE_LIMIT = 1024;
+    public static final SlowConsumerPolicy DEFAULT_SLOW_CONSUMER_POLICY = SlowConsumerPolicy.DROP_OLDEST;
+    public static final int DEFAULT_WRITE_FLUSH_THRESHOLD = 64 * 1024;
+    public static final TimestampFormat DEFAULT_TIMESTAMP_FORMAT = TimestampFormat.ISO;
+    public static final int DEFAULT_TRAFFIC_LOG_QUEUE_CAPACITY = 8192;
+    public static final int DEFAULT_TRAFFIC_LOG_MAX_PAYLOAD_CHARS = 256;
+    public static final double DEFAULT_TRAFFIC_LOG_SAMPLE_RATE = 1.0;
+    public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    public static final int DEFAULT_COMPRESSION_MIN_SIZE = 256;
+    public static final String DEFAULT_HISTORY_DIRECTORY = "data/history";
+    public static final int DEFAULT_HISTORY_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_HISTORY_MAX_BYTES = 1024L * 1024 * 1024;
+    public static final long DEFAULT_HISTORY_MAX_AGE_SECONDS = 24 * 60 * 60;
+    public static final int DEFAULT_HISTORY_REPLAY_BATCH_SIZE = 256;
+    public static final int DEFAULT_SESSION_GRACE_PERIOD_SECONDS = 30;
+    public static final long DEFAULT_PRESENCE_WINDOW_MS = 0;
+    public static final int DEFAULT_HEARTBEAT_INTERVAL_SECONDS = 30;
+    public static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 90;
+    public static final long DEFAULT_STATIC_MAX_AGE_SECONDS = 60 * 60;
+    public static final int DEFAULT_MANAGEMENT_PORT = 8081;
+    public static final int DEFAULT_DRAIN_DEADLINE_SECONDS = 30;
+    public static final int DEFAULT_DRAIN_BATCH_SIZE = 100;
+    public static final long DEFAULT_DRAIN_RECONNECT_SPREAD_MS = 10_000;
+    public static final long DEFAULT_MANAGEMENT_SNAPSHOT_INTERVAL_MS = 1000;
+    public static final long DEFAULT_MANAGEMENT_MAX_EVENT_LOOP_LAG_MS = 2000;
+    public static final double DEFAULT_RATE_LIMIT_MESSAGES_PER_SECOND = 100;
+    public static final int DEFAULT_RATE_LIMIT_BURST = 200;
+    public static final RateLimitAction DEFAULT_RATE_LIMIT_ACTION = RateLimitAction.REJECT;
+    public static final int DEFAULT_PRESENCE_MAX_BATCH_SIZE = 1000;
+    public static final String CLUSTER_TRANSPORT_EVENTBUS = "eventbus";
+    public static final String CLUSTER_TRANSPORT_LOCAL = "local";
+
+    private int port = DEFAULT_PORT;
+    private int instances = DEFAULT_INSTANCES;
+    private int outboundQueueLimit = DEFAULT_OUTBOUND_QUEUE_LIMIT;
+    private SlowConsumerPolicy slowConsumerPolicy = DEFAULT_SLOW_CONSUMER_POLICY;
+    private boolean writeCoalescingEnabled;
+    private int writeFlushThreshold = DEFAULT_WRITE_FLUSH_THRESHOLD;
+    private TimestampFormat timestampFormat = DEFAULT_TIMESTAMP_FORMAT;
+    private boolean trafficLogEnabled = true;
+    private int trafficLogQueueCapacity = DEFAULT_TRAFFIC_LOG_QUEUE_CAPACITY;
+    private int trafficLogMaxPayloadChars = DEFAULT_TRAFFIC_LOG_MAX_PAYLOAD_CHARS;
+    private double trafficLogDefaultSampleRate = DEFAULT_TRAFFIC_LOG_SAMPLE_RATE;
+    private Map<String, Double> trafficLogSampleRates = new HashMap<>();
+    private boolean compressionEnabled = true;
+    private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    private int compressionMinSize = DEFAULT_COMPRESSION_MIN_SIZE;
+    private boolean historyEnabled = false;
+    private String historyDirectory = DEFAULT_HISTORY_DIRECTORY;
+    private int historySegmentSize = DEFAULT_HISTORY_SEGMENT_SIZE;
+    private long historyMaxBytes = DEFAULT_HISTORY_MAX_BYTES;
+    private long historyMaxAgeSeconds = DEFAULT_HISTORY_MAX_AGE_SECONDS;
+    private int historyReplayBatchSize = DEFAULT_HISTORY_REPLAY_BATCH_SIZE;
+    private boolean sessionResumptionEnabled = true;
+    private int sessionGracePeriodSeconds = DEFAULT_SESSION_GRACE_PERIOD_SECONDS;
+    private long presenceWindowMs = DEFAULT_PRESENCE_WINDOW_MS;
+    private int presenceMaxBatchSize = DEFAULT_PRESENCE_MAX_BATCH_SIZE;
+    private boolean heartbeatEnabled = true;
+    private int heartbeatIntervalSeconds = DEFAULT_HEARTBEAT_INTERVAL_SECONDS;
+    private int idleTimeoutSeconds = DEFAULT_IDLE_TIMEOUT_SECONDS;
+    private boolean drainEnabled = true;
+    private int drainDeadlineSeconds = DEFAULT_DRAIN_DEADLINE_SECONDS;
+    private int drainBatchSize = DEFAULT_DRAIN_BATCH_SIZE;
+    private long drainReconnectSpreadMs = DEFAULT_DRAIN_RECONNECT_SPREAD_MS;
+    private boolean managementEnabled = true;
+    private int managementPort = DEFAULT_MANAGEMENT_PORT;
+    private long managementSnapshotIntervalMs = DEFAULT_MANAGEMENT_SNAPSHOT_INTERVAL_MS;
+    private long managementMaxEventLoopLagMs = DEFAULT_MANAGEMENT_MAX_EVENT_LOOP_LAG_MS;
+    private String staticDirectory;
+    private long staticMaxAgeSeconds = DEFAULT_STATIC_MAX_AGE_SECONDS;
+    private boolean rateLimitEnabled = true;
+    private double rateLimitMessagesPerSecond = DEFAULT_RATE_LIMIT_MESSAGES_PER_SECOND;
+    private int rateLimitBurst = DEFAULT_RATE_LIMIT_BURST;
+    private Map<String, Rate> rateLimitPerType = new HashMap<>();
+    private double rateLimitGlobalBroadcastsPerSecond;
+    private int rateLimitGlobalBroadcastBurst;
+    private RateLimitAction rateLimitAction = DEFAULT_RATE_LIMIT_ACTION;
+    private boolean clusterEnabled;
+    private String clusterTransport = CLUSTER_TRANSPORT_EVENTBUS;
+    private String clusterNodeId;
+    private int localClusterNodes = 1;
+
+    public ServerOptions() {
+    }
+
+    public ServerOptions(JsonObject json) {
+        port = json.getInteger("port", DEFAULT_PORT);
+        instances = json.getInteger("instances", DEFAULT_INSTANCES);
+        outboundQueueLimit = json.getInteger("outboundQueueLimit", DEFAULT_OUTBOUND_QUEUE_LIMIT);
+        slowConsumerPolicy = SlowConsumerPolicy.fromConfig(
+            json.getString("slowConsumerPolicy", DEFAULT_SLOW_CONSUMER_POLICY.configName()));
+        writeCoalescingEnabled = json.getBoolean("writeCoalescing", false);
+        writeFlushThreshold = json.getInteger("writeFlushThreshold", DEFAULT_WRITE_FLUSH_THRESHOLD);
+        timestampFormat = TimestampFormat.fromConfig(
+            json.getString("timestampFormat", DEFAULT_TIMESTAMP_FORMAT.configName()));
+        JsonObject trafficLog = json.getJsonObject("trafficLog", new JsonObject());
+        trafficLogEnabled = trafficLog.getBoolean("enabled", true);
+        trafficLogQueueCapacity = trafficLog.getInteger("queueCapacity", DEFAULT_TRAFFIC_LOG_QUEUE_CAPACITY);
+        trafficLogMaxPayloadChars = trafficLog.getInteger("maxPayloadChars", DEFAULT_TRAFFIC_LOG_MAX_PAYLOAD_CHARS);
+        trafficLogDefaultSampleRate = trafficLog.getDouble("defaultSampleRate", DEFAULT_TRAFFIC_LOG_SAMPLE_RATE);
+        trafficLog.getJsonObject("sampleRates", new JsonObject())
+            .forEach(entry -> trafficLogSampleRates.put(entry.getKey(), ((Number) entry.getValue()).doubleValue()));
+        JsonObject compression = json.getJsonObject("compression", new JsonObject());
+        compressionEnabled = compression.getBoolean("enabled", true);
+        compressionLevel = compression.getInteger("level", DEFAULT_COMPRESSION_LEVEL);
+        compressionMinSize = compression.getInteger("minSize", DEFAULT_COMPRESSION_MIN_SIZE);
+        JsonObject history = json.getJsonObject("history", new JsonObject());
+        historyEnabled = history.getBoolean("enabled", false);
+        historyDirectory = history.getString("directory", DEFAULT_HISTORY_DIRECTORY);
+        historySegmentSize = history.getInteger("segmentSize", DEFAULT_HISTORY_SEGMENT_SIZE);
+        historyMaxBytes = history.getLong("maxBytes", DEFAULT_HISTORY_MAX_BYTES);
+        historyMaxAgeSeconds = history.getLong("maxAgeSeconds", DEFAULT_HISTORY_MAX_AGE_SECONDS);
+        historyReplayBatchSize = history.getInteger("replayBatchSize", DEFAULT_HISTORY_REPLAY_BATCH_SIZE);
+        JsonObject session = json.getJsonObject("session", new JsonObject());
+        sessionResumptionEnabled = session.getBoolean("resumable", true);
+        sessionGracePeriodSeconds = session.getInteger("gracePeriodSeconds", DEFAULT_SESSION_GRACE_PERIOD_SECONDS);
+        JsonObject presence = json.getJsonObject("presence", new JsonObject());
+        presenceWindowMs = presence.getLong("windowMs", DEFAULT_PRESENCE_WINDOW_MS);
+        presenceMaxBatchSize = presence.getInteger("maxBatchSize", DEFAULT_PRESENCE_MAX_BATCH_SIZE);
+        JsonObject heartbeat = json.getJsonObject("heartbeat", new JsonObject());
+        heartbeatEnabled = heartbeat.getBoolean("enabled", true);
+        heartbeatIntervalSeconds = heartbeat.getInteger("intervalSeconds", DEFAULT_HEARTBEAT_INTERVAL_SECONDS);
+        idleTimeoutSeconds = heartbeat.getInteger("idleTimeoutSeconds", DEFAULT_IDLE_TIMEOUT_SECONDS);
+        JsonObject drain = json.getJsonObject("drain", new JsonObject());
+        drainEnabled = drain.getBoolean("enabled", true);
+        drainDeadlineSeconds = drain.getInteger("deadlineSeconds", DEFAULT_DRAIN_DEADLINE_SECONDS);
+        drainBatchSize = drain.getInteger("batchSize", DEFAULT_DRAIN_BATCH_SIZE);
+        drainReconnectSpreadMs = drain.getLong("reconnectSpreadMs", DEFAULT_DRAIN_RECONNECT_SPREAD_MS);
+        JsonObject management = json.getJsonObject("management", new JsonObject());
+        managementEnabled = management.getBoolean("enabled", true);
+        managementPort = management.getInteger("port", DEFAULT_MANAGEMENT_PORT);
+        managementSnapshotIntervalMs = management.getLong("snapshotIntervalMs", DEFAULT_MANAGEMENT_SNAPSHOT_INTERVAL_MS);
+        managementMaxEventLoopLagMs = management.getLong("maxEventLoopLagMs", DEFAULT_MANAGEMENT_MAX_EVENT_LOOP_LAG_MS);
+        JsonObject staticAssets = json.getJsonObject("static", new JsonObject());
+        staticDirectory = staticAssets.getString("directory");
+        staticMaxAgeSeconds = staticAssets.getLong("maxAgeSeconds", DEFAULT_STATIC_MAX_AGE_SECONDS);
+        JsonObject rateLimit = json.getJsonObject("rateLimit", new JsonObject());
+        rateLimitEnabled = rateLimit.getBoolean("enabled", true);
+        rateLimitMessagesPerSecond = rateLimit.getDouble("messagesPerSecond", DEFAULT_RATE_LIMIT_MESSAGES_PER_SECOND);
+        rateLimitBurst = rateLimit.getInteger("burst", DEFAULT_RATE_LIMIT_BURST);
+        rateLimit.getJsonObject("perType", new JsonObject()).forEach(entry -> {
+            JsonObject rate = (JsonObject) entry.getValue();
+            rateLimitPerType.put(entry.getKey(), new Rate(rate.getDouble("messagesPerSecond", 0.0),
+                rate.getInteger("burst", 1)));
+        });
+        rateLimitGlobalBroadcastsPerSecond = rateLimit.getDouble("globalBroadcastsPerSecond", 0.0);
+        rateLimitGlobalBroadcastBurst = rateLimit.getInteger("globalBroadcastBurst", 1);
+        rateLimitAction = RateLimitAction.fromConfig(
+            rateLimit.getString("action", DEFAULT_RATE_LIMIT_ACTION.configName()));
+        JsonObject cluster = json.getJsonObject("cluster", new JsonObject());
+        clusterEnabled = cluster.getBoolean("enabled", false);
+        clusterTransport = cluster.getString("transport", CLUSTER_TRANSPORT_EVENTBUS);
+        clusterNodeId = cluster.getString("nodeId");
+        localClusterNodes = cluster.getInteger("localNodes", 1);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public ServerOptions setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public int getInstances() {
+        return instances;
+    }
+
+    public ServerOptions setInstances(int instances) {
+        this.instances = instances;
+        return this;
+    }
+
+    public int getOutboundQueueLimit() {
+        return outboundQueueLimit;
+    }
+
+    public ServerOptions setOutboundQueueLimit(int outboundQueueLimit) {
+        this.outboundQueueLimit = outboundQueueLimit;
+        return this;
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public ServerOptions setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        return this;
+    }
+
+    // Whether a connection's frames are flushed once per event-loop turn rather than one by one
+    public boolean isWriteCoalescingEnabled() {
+        return writeCoalescingEnabled;
+    }
+
+    public ServerOptions setWriteCoalescingEnabled(boolean writeCoalescingEnabled) {
+        this.writeCoalescingEnabled = writeCoalescingEnabled;
+        return this;
+    }
+
+    // Unflushed bytes after which a coalescing connection flushes without waiting for the turn to end
+    public int getWriteFlushThreshold() {
+        return writeFlushThreshold;
+    }
+
+    public ServerOptions setWriteFlushThreshold(int writeFlushThreshold) {
+        this.writeFlushThreshold = writeFlushThreshold;
+        return this;
+    }
+
+    public TimestampFormat getTimestampFormat() {
+        return timestampFormat;
+    }
+
+    public ServerOptions setTimestampFormat(TimestampFormat timestampFormat) {
+        this.timestampFormat = timestampFormat;
+        return this;
+    }
+
+    public boolean isTrafficLogEnabled() {
+        return trafficLogEnabled;
+    }
+
+    public ServerOptions setTrafficLogEnabled(boolean trafficLogEnabled) {
+        this.trafficLogEnabled = trafficLogEnabled;
+        return this;
+    }
+
+    public int getTrafficLogQueueCapacity() {
+        return trafficLogQueueCapacity;
+    }
+
+    public ServerOptions setTrafficLogQueueCapacity(int trafficLogQueueCapacity) {
+        this.trafficLogQueueCapacity = trafficLogQueueCapacity;
+        return this;
+    }
+
+    public int getTrafficLogMaxPayloadChars() {
+        return trafficLogMaxPayloadChars;
+    }
+
+    public ServerOptions setTrafficLogMaxPayloadChars(int trafficLogMaxPayloadChars) {
+        this.trafficLogMaxPayloadChars = trafficLogMaxPayloadChars;
+        return this;
+    }
+
+    public double getTrafficLogDefaultSampleRate() {
+        return trafficLogDefaultSampleRate;
+    }
+
+    public ServerOptions setTrafficLogDefaultSampleRate(double trafficLogDefaultSampleRate) {
+        this.trafficLogDefaultSampleRate = trafficLogDefaultSampleRate;
+        return this;
+    }
+
+    // Sample rate (0.0 to 1.0) per JSON message type name; other types use the default rate
+    public Map<String, Double> getTrafficLogSampleRates() {
+        return trafficLogSampleRates;
+    }
+
+    public ServerOptions setTrafficLogSampleRates(Map<String, Double> trafficLogSampleRates) {
+        this.trafficLogSampleRates = trafficLogSampleRates;
+        return this;
+    }
+
+    // Whether clients may negotiate permessage-deflate
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public ServerOptions setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+        return this;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public ServerOptions setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    // Messages smaller than this many bytes are sent uncompressed
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    public ServerOptions setCompressionMinSize(int compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+        return this;
+    }
+
+    // Whether broadcast and private messages are recorded for replay
+    public boolean isHistoryEnabled() {
+        return historyEnabled;
+    }
+
+    public ServerOptions setHistoryEnabled(boolean historyEnabled) {
+        this.historyEnabled = historyEnabled;
+        return this;
+    }
+
+    public String getHistoryDirectory() {
+        return historyDirectory;
+    }
+
+    public ServerOptions setHistoryDirectory(String historyDirectory) {
+        this.historyDirectory = historyDirectory;
+        return this;
+    }
+
+    public int getHistorySegmentSize() {
+        return historySegmentSize;
+    }
+
+    public ServerOptions setHistorySegmentSize(int historySegmentSize) {
+        this.historySegmentSize = historySegmentSize;
+        return this;
+    }
+
+    public long getHistoryMaxBytes() {
+        return historyMaxBytes;
+    }
+
+    public ServerOptions setHistoryMaxBytes(long historyMaxBytes) {
+        this.historyMaxBytes = historyMaxBytes;
+        return this;
+    }
+
+    public long getHistoryMaxAgeSeconds() {
+        return historyMaxAgeSeconds;
+    }
+
+    public ServerOptions setHistoryMaxAgeSeconds(long historyMaxAgeSeconds) {
+        this.historyMaxAgeSeconds = historyMaxAgeSeconds;
+        return this;
+    }
+
+    // Messages sent per event-loop turn while replaying history to a client
+    public int getHistoryReplayBatchSize() {
+        return historyReplayBatchSize;
+    }
+
+    public ServerOptions setHistoryReplayBatchSize(int historyReplayBatchSize) {
+        this.historyReplayBatchSize = historyReplayBatchSize;
+        return this;
+    }
+
+    // Whether a reconnecting client can resume its session and keep its connection id
+    public boolean isSessionResumptionEnabled() {
+        return sessionResumptionEnabled;
+    }
+
+    public ServerOptions setSessionResumptionEnabled(boolean sessionResumptionEnabled) {
+        this.sessionResumptionEnabled = sessionResumptionEnabled;
+        return this;
+    }
+
+    // How long a session is held for its client after the socket closes
+    public int getSessionGracePeriodSeconds() {
+        return sessionGracePeriodSeconds;
+    }
+
+    public ServerOptions setSessionGracePeriodSeconds(int sessionGracePeriodSeconds) {
+        this.sessionGracePeriodSeconds = sessionGracePeriodSeconds;
+        return this;
+    }
+
+    // Joins and leaves are collected for this long and sent as one delta; 0 sends each on its own
+    public long getPresenceWindowMs() {
+        return presenceWindowMs;
+    }
+
+    public ServerOptions setPresenceWindowMs(long presenceWindowMs) {
+        this.presenceWindowMs = presenceWindowMs;
+        return this;
+    }
+
+    // A window's delta is sent early once it holds this many events
+    public int getPresenceMaxBatchSize() {
+        return presenceMaxBatchSize;
+    }
+
+    public ServerOptions setPresenceMaxBatchSize(int presenceMaxBatchSize) {
+        this.presenceMaxBatchSize = presenceMaxBatchSize;
+        return this;
+    }
+
+    // Whether quiet connections are pinged and dead ones closed
+    public boolean isHeartbeatEnabled() {
+        return heartbeatEnabled;
+    }
+
+    public ServerOptions setHeartbeatEnabled(boolean heartbeatEnabled) {
+        this.heartbeatEnabled = heartbeatEnabled;
+        return this;
+    }
+
+    // A connection quiet for this long is sent a ping
+    public int getHeartbeatIntervalSeconds() {
+        return heartbeatIntervalSeconds;
+    }
+
+    public ServerOptions setHeartbeatIntervalSeconds(int heartbeatIntervalSeconds) {
+        this.heartbeatIntervalSeconds = heartbeatIntervalSeconds;
+        return this;
+    }
+
+    // A connection quiet for this long, pongs included, is closed
+    public int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    public ServerOptions setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+        return this;
+    }
+
+    // Whether stopping the server moves clients off gradually rather than dropping them all at once
+    public boolean isDrainEnabled() {
+        return drainEnabled;
+    }
+
+    public ServerOptions setDrainEnabled(boolean drainEnabled) {
+        this.drainEnabled = drainEnabled;
+        return this;
+    }
+
+    // Time within which a stopping server has closed all its connections
+    public int getDrainDeadlineSeconds() {
+        return drainDeadlineSeconds;
+    }
+
+    public ServerOptions setDrainDeadlineSeconds(int drainDeadlineSeconds) {
+        this.drainDeadlineSeconds = drainDeadlineSeconds;
+        return this;
+    }
+
+    // Connections closed together, per server instance, while draining
+    public int getDrainBatchSize() {
+        return drainBatchSize;
+    }
+
+    public ServerOptions setDrainBatchSize(int drainBatchSize) {
+        this.drainBatchSize = drainBatchSize;
+        return this;
+    }
+
+    // Clients are told to wait a random delay up to this long before reconnecting
+    public long getDrainReconnectSpreadMs() {
+        return drainReconnectSpreadMs;
+    }
+
+    public ServerOptions setDrainReconnectSpreadMs(long drainReconnectSpreadMs) {
+        this.drainReconnectSpreadMs = drainReconnectSpreadMs;
+        return this;
+    }
+
+    // Whether probes and metrics get their own port and event loop
+    public boolean isManagementEnabled() {
+        return managementEnabled;
+    }
+
+    public ServerOptions setManagementEnabled(boolean managementEnabled) {
+        this.managementEnabled = managementEnabled;
+        return this;
+    }
+
+    public int getManagementPort() {
+        return managementPort;
+    }
+
+    public ServerOptions setManagementPort(int managementPort) {
+        this.managementPort = managementPort;
+        return this;
+    }
+
+    // How often health, readiness and stats snapshots are rebuilt and event-loop lag is sampled
+    public long getManagementSnapshotIntervalMs() {
+        return managementSnapshotIntervalMs;
+    }
+
+    public ServerOptions setManagementSnapshotIntervalMs(long managementSnapshotIntervalMs) {
+        this.managementSnapshotIntervalMs = managementSnapshotIntervalMs;
+        return this;
+    }
+
+    // Event-loop lag above which the server reports itself not ready
+    public long getManagementMaxEventLoopLagMs() {
+        return managementMaxEventLoopLagMs;
+    }
+
+    public ServerOptions setManagementMaxEventLoopLagMs(long managementMaxEventLoopLagMs) {
+        this.managementMaxEventLoopLagMs = managementMaxEventLoopLagMs;
+        return this;
+    }
+
+    // Directory to serve the web client from instead of the classpath, or null
+    public String getStaticDirectory() {
+        return staticDirectory;
+    }
+
+    public ServerOptions setStaticDirectory(String staticDirectory) {
+        this.staticDirectory = staticDirectory;
+        return this;
+    }
+
+    // How long browsers may cache static files that are neither HTML nor fingerprinted
+    public long getStaticMaxAgeSeconds() {
+        return staticMaxAgeSeconds;
+    }
+
+    public ServerOptions setStaticMaxAgeSeconds(long staticMaxAgeSeconds) {
+        this.staticMaxAgeSeconds = staticMaxAgeSeconds;
+        return this;
+    }
+
+    // Whether inbound messages are rate limited
+    public boolean isRateLimitEnabled() {
+        return rateLimitEnabled;
+    }
+
+    public ServerOptions setRateLimitEnabled(boolean rateLimitEnabled) {
+        this.rateLimitEnabled = rateLimitEnabled;
+        return this;
+    }
+
+    // Sustained rate of messages of any type per connection; 0 means unlimited
+    public double getRateLimitMessagesPerSecond() {
+        return rateLimitMessagesPerSecond;
+    }
+
+    public ServerOptions setRateLimitMessagesPerSecond(double rateLimitMessagesPerSecond) {
+        this.rateLimitMessagesPerSecond = rateLimitMessagesPerSecond;
+        return this;
+    }
+
+    // Messages a connection may send at once before the sustained rate applies
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    public ServerOptions setRateLimitBurst(int rateLimitBurst) {
+        this.rateLimitBurst = rateLimitBurst;
+        return this;
+    }
+
+    // Additional per-connection limits per JSON message type name ("message" for general messages)
+    public Map<String, Rate> getRateLimitPerType() {
+        return rateLimitPerType;
+    }
+
+    public ServerOptions setRateLimitPerType(Map<String, Rate> rateLimitPerType) {
+        this.rateLimitPerType = rateLimitPerType;
+        return this;
+    }
+
+    // Server-wide rate of broadcasts and publishes from all clients together; 0 means unlimited
+    public double getRateLimitGlobalBroadcastsPerSecond() {
+        return rateLimitGlobalBroadcastsPerSecond;
+    }
+
+    public ServerOptions setRateLimitGlobalBroadcastsPerSecond(double rateLimitGlobalBroadcastsPerSecond) {
+        this.rateLimitGlobalBroadcastsPerSecond = rateLimitGlobalBroadcastsPerSecond;
+        return this;
+    }
+
+    public int getRateLimitGlobalBroadcastBurst() {
+        return rateLimitGlobalBroadcastBurst;
+    }
+
+    public ServerOptions setRateLimitGlobalBroadcastBurst(int rateLimitGlobalBroadcastBurst) {
+        this.rateLimitGlobalBroadcastBurst = rateLimitGlobalBroadcastBurst;
+        return this;
+    }
+
+    public RateLimitAction getRateLimitAction() {
+        return rateLimitAction;
+    }
+
+    public ServerOptions setRateLimitAction(RateLimitAction rateLimitAction) {
+        this.rateLimitAction = rateLimitAction;
+        return this;
+    }
+
+    public boolean isClusterEnabled() {
+        return clusterEnabled;
+    }
+
+    public ServerOptions setClusterEnabled(boolean clusterEnabled) {
+        this.clusterEnabled = clusterEnabled;
+        return this;
+    }
+
+    public String getClusterTransport() {
+        return clusterTransport;
+    }
+
+    public ServerOptions setClusterTransport(String clusterTransport) {
+        this.clusterTransport = clusterTransport;
+        return this;
+    }
+
+    public String getClusterNodeId() {
+        return clusterNodeId;
+    }
+
+    public ServerOptions setClusterNodeId(String clusterNodeId) {
+        this.clusterNodeId = clusterNodeId;
+        return this;
+    }
+
+    public int getLocalClusterNodes() {
+        return localClusterNodes;
+    }
+
+    public ServerOptions setLocalClusterNodes(int localClusterNodes) {
+        this.localClusterNodes = localClusterNodes;
+        return this;
+    }
+
+    /**
+     * A sustained rate with the burst allowed on top of it.
+     */
+    public static final class Rate {
+        private final double perSecond;
+        private final int burst;
+
+        public Rate(double perSecond, int burst) {
+            this.perSecond = perSecond;
+            this.burst = burst;
+        }
+
+        public double perSecond() {
+            return perSecond;
+        }
+
+        public int burst() {
+            return burst;
+        }
+    }
+}
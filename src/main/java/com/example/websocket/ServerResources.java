@@ -0,0 +1,146 @@
+package com.example.websocket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State shared by every {@link WebSocketServer} instance deployed in the same Vert.x instance.
+ */
+public class ServerResources {
+    private final ServerOptions options;
+    private final ConnectionRegistry registry = new ConnectionRegistry();
+    private final OutboundStats outboundStats = new OutboundStats();
+    private final TrafficLog trafficLog;
+    private final FrameCompressor compressor;
+    private final ServerMetrics metrics;
+    private final BroadcastEngine broadcastEngine;
+    private final TopicRegistry topics = new TopicRegistry();
+    private final MessageHistory history;
+    private final SessionStore sessions;
+    private final PresenceAggregator presence;
+    private final HeartbeatMonitor heartbeats;
+    private final RateLimiter rateLimiter;
+    // Per node, so nodes in one JVM can use different timestamp formats
+    private final JsonMessageCodec jsonCodec;
+    private final BinaryMessageCodec binaryCodec = new BinaryMessageCodec();
+    private final MessageHandlers handlers;
+    private final StaticAssets staticAssets;
+    private final HealthMonitor health;
+    private final AtomicInteger runningInstances = new AtomicInteger();
+    private ClusterNode cluster;
+
+    public ServerResources(ServerOptions options) {
+        this.options = options;
+        this.jsonCodec = new JsonMessageCodec(options.getTimestampFormat());
+        this.handlers = new MessageHandlers(jsonCodec);
+        this.trafficLog = new TrafficLog(options);
+        this.compressor = new FrameCompressor(options);
+        this.history = new MessageHistory(options);
+        this.sessions = new SessionStore(options);
+        this.heartbeats = new HeartbeatMonitor(options);
+        this.rateLimiter = new RateLimiter(options);
+        this.staticAssets = new StaticAssets(options, WebSocketServer.STATIC_PATH);
+        this.metrics = new ServerMetrics(registry, outboundStats, trafficLog, sessions, heartbeats);
+        this.broadcastEngine = new BroadcastEngine(registry, metrics, compressor, this::codec);
+        this.presence = new PresenceAggregator(options, broadcastEngine, this::totalConnections);
+        this.health = new HealthMonitor(this, options);
+    }
+
+    public ServerOptions options() {
+        return options;
+    }
+
+    public ConnectionRegistry registry() {
+        return registry;
+    }
+
+    public OutboundStats outboundStats() {
+        return outboundStats;
+    }
+
+    public TrafficLog trafficLog() {
+        return trafficLog;
+    }
+
+    public FrameCompressor compressor() {
+        return compressor;
+    }
+
+    public ServerMetrics metrics() {
+        return metrics;
+    }
+
+    public BroadcastEngine broadcastEngine() {
+        return broadcastEngine;
+    }
+
+    public TopicRegistry topics() {
+        return topics;
+    }
+
+    public MessageHistory history() {
+        return history;
+    }
+
+    public SessionStore sessions() {
+        return sessions;
+    }
+
+    public PresenceAggregator presence() {
+        return presence;
+    }
+
+    public HeartbeatMonitor heartbeats() {
+        return heartbeats;
+    }
+
+    public RateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    public HealthMonitor health() {
+        return health;
+    }
+
+    public StaticAssets staticAssets() {
+        return staticAssets;
+    }
+
+    public MessageCodec codec(WireProtocol protocol) {
+        return protocol == WireProtocol.BINARY ? binaryCodec : jsonCodec;
+    }
+
+    public JsonMessageCodec jsonCodec() {
+        return jsonCodec;
+    }
+
+    public BinaryMessageCodec binaryCodec() {
+        return binaryCodec;
+    }
+
+    public MessageHandlers handlers() {
+        return handlers;
+    }
+
+    // Null unless clustered mode is enabled
+    public ClusterNode cluster() {
+        return cluster;
+    }
+
+    public void setCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    public void instanceStarted() {
+        runningInstances.incrementAndGet();
+    }
+
+    // Returns true for the last running instance to stop
+    public boolean instanceStopped() {
+        return runningInstances.decrementAndGet() == 0;
+    }
+
+    // Connections on this node plus, when clustered, those known on other nodes
+    public int totalConnections() {
+        return registry.size() + (cluster != null ? cluster.remoteConnections() : 0);
+    }
+}
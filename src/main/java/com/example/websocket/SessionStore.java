@@ -0,0 +1,202 @@
+package com.example.websocket;
+
+import io.vertx.core.Handler;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable sessions for the connections on this node. Every connection is issued a resume
+ * token in its welcome message. When the socket closes, the session is held for a grace
+ * period instead of being announced as gone; a client that reconnects with the token in
+ * time carries on under the same id and handle, with its topic subscriptions, and no
+ * presence is broadcast either way. Only once the grace period runs out does the session end.
+ *
+ * <p>A client may also present its token while the server still holds its old socket, as
+ * happens when the network drops without a close. The new connection then takes over and the
+ * old one is closed without ending the session.
+ *
+ * <p>Tokens are single use: every resumption issues a new one. Sessions are held in memory,
+ * so a client has to reconnect to the same node to resume.
+ */
+public class SessionStore {
+    private static final int TOKEN_BYTES = 24;
+
+    private final boolean enabled;
+    private final long gracePeriodMs;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> byToken = new ConcurrentHashMap<>();
+    private final Map<String, Session> byId = new ConcurrentHashMap<>();
+    private final Map<Integer, Session> detachedByHandle = new ConcurrentHashMap<>();
+
+    public SessionStore(ServerOptions options) {
+        this.enabled = options.isSessionResumptionEnabled();
+        this.gracePeriodMs = options.getSessionGracePeriodSeconds() * 1000L;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int detachedCount() {
+        return detachedByHandle.size();
+    }
+
+    // Starts a session for a new connection and returns its token, or null when disabled
+    public synchronized String open(ClientConnection connection) {
+        if (!enabled) {
+            return null;
+        }
+        Session session = new Session(connection.id(), connection.handle());
+        session.connection = connection;
+        byId.put(session.id, session);
+        return issueToken(session);
+    }
+
+    // Claims the session a token belongs to, or returns null if the token is unknown or expired.
+    // The caller must attach the new connection, and close the previous one if there is one.
+    public synchronized Session resume(String token) {
+        Session session = byToken.remove(token);
+        if (session == null) {
+            return null;
+        }
+        session.previous = session.connection;
+        if (session.previous == null) {
+            detachedByHandle.remove(session.handle, session);
+            session.lastConnection.context().owner().cancelTimer(session.expiryTimer);
+        } else {
+            // The previous connection still holds the subscriptions and hands them over itself
+            session.subscriptions = Set.of();
+        }
+        // Neither the previous socket closing nor a timer firing can end the session from here on
+        session.connection = null;
+        session.expiryTimer = -1;
+        return session;
+    }
+
+    // Hands a claimed session to its new connection and returns the connection's new token
+    public synchronized String attach(Session session, ClientConnection connection) {
+        session.connection = connection;
+        session.previous = null;
+        session.lastConnection = null;
+        session.subscriptions = Set.of();
+        return issueToken(session);
+    }
+
+    // Called when a connection's socket has closed, after its subscriptions were snapshotted.
+    // Returns true if its id lives on, either held for resumption or already taken over, and
+    // false if the session has ended. onExpired runs if the grace period passes unclaimed.
+    public synchronized boolean detach(ClientConnection connection, Set<String> subscriptions,
+                                       Handler<Session> onExpired) {
+        Session session = byId.get(connection.id());
+        if (session == null) {
+            return false;
+        }
+        if (session.connection != connection) {
+            // Taken over by a resumed connection, or being resumed right now
+            return true;
+        }
+        session.connection = null;
+        session.lastConnection = connection;
+        session.subscriptions = subscriptions;
+        detachedByHandle.put(session.handle, session);
+        session.expiryTimer = connection.context().owner().setTimer(gracePeriodMs, id -> {
+            if (expire(session, id)) {
+                onExpired.handle(session);
+            }
+        });
+        return true;
+    }
+
+    // Ends the session of a connection whose client closed it on purpose. Returns false if the
+    // connection had already been taken over, in which case the session carries on.
+    public synchronized boolean end(ClientConnection connection) {
+        Session session = byId.get(connection.id());
+        if (session == null) {
+            return true;
+        }
+        if (session.connection != connection) {
+            return false;
+        }
+        byId.remove(session.id);
+        byToken.remove(session.token, session);
+        return true;
+    }
+
+    // A session whose client is away, so messages for it can be recorded for its replay
+    public synchronized Peer detached(String connectionId) {
+        Session session = byId.get(connectionId);
+        return session != null && session.connection == null ? session : null;
+    }
+
+    public Peer detached(int handle) {
+        return detachedByHandle.get(handle);
+    }
+
+    private synchronized boolean expire(Session session, long timerId) {
+        // A resumption may have claimed the session while the timer was firing
+        if (session.expiryTimer != timerId || byId.get(session.id) != session) {
+            return false;
+        }
+        byId.remove(session.id);
+        byToken.remove(session.token, session);
+        detachedByHandle.remove(session.handle, session);
+        return true;
+    }
+
+    private String issueToken(Session session) {
+        if (session.token != null) {
+            byToken.remove(session.token, session);
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        session.token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        byToken.put(session.token, session);
+        return session.token;
+    }
+
+    /**
+     * The identity a client keeps across reconnects. Fields are guarded by the store.
+     */
+    public static final class Session implements Peer {
+        private final String id;
+        private final int handle;
+        private String token;
+        // The live connection, or null while the client is away
+        private ClientConnection connection;
+        // Set by resume() while a live connection is being taken over
+        private ClientConnection previous;
+        // The connection that went away, whose event loop runs the expiry timer
+        private ClientConnection lastConnection;
+        private Set<String> subscriptions = Set.of();
+        private long expiryTimer = -1;
+
+        Session(String id, int handle) {
+            this.id = id;
+            this.handle = handle;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public int handle() {
+            return handle;
+        }
+
+        // The connection being taken over, or null if the session was detached
+        public ClientConnection previous() {
+            return previous;
+        }
+
+        // Topic patterns to restore; empty when taking over, as the previous connection still holds them
+        public Set<String> subscriptions() {
+            return subscriptions;
+        }
+    }
+}
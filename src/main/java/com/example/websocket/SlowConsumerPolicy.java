@@ -0,0 +1,41 @@
+package com.example.websocket;
+
+/**
+ * What a connection does when its outbound backlog is full.
+ */
+public enum SlowConsumerPolicy {
+    // Discard the oldest queued frame to make room for the new one
+    DROP_OLDEST("drop-oldest"),
+    // Discard the frame being sent
+    DROP_NEWEST("drop-newest"),
+    // Discard the oldest queued presence frame; fall back to dropping the oldest frame. The
+    // client's member list may then miss a join or leave until it next reconnects.
+    DROP_OLDEST_PRESENCE("drop-oldest-presence"),
+    // Close the connection
+    DISCONNECT("disconnect");
+
+    // The name DROP_OLDEST_PRESENCE was first configured by, still accepted
+    private static final String LEGACY_DROP_OLDEST_PRESENCE = "coalesce-presence";
+
+    private final String configName;
+
+    SlowConsumerPolicy(String configName) {
+        this.configName = configName;
+    }
+
+    public String configName() {
+        return configName;
+    }
+
+    public static SlowConsumerPolicy fromConfig(String value) {
+        if (LEGACY_DROP_OLDEST_PRESENCE.equalsIgnoreCase(value)) {
+            return DROP_OLDEST_PRESENCE;
+        }
+        for (SlowConsumerPolicy policy : values()) {
+            if (policy.configName.equalsIgnoreCase(value) || policy.name().equalsIgnoreCase(value)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown slow consumer policy: " + value);
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.websocket;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.buffer.impl.BufferImpl;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.impl.MimeMapping;
+import io.vertx.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the browser client's files from memory. Every asset is read once at startup, when its
+ * ETag and a gzip variant are computed; a {@code .br} file shipped next to an asset is used as
+ * its Brotli variant. A request then costs a map lookup and a write of a shared direct buffer,
+ * or a 304 when the browser already has the current version, so a reload storm after a deploy
+ * does little work on the event loops the WebSocket traffic shares.
+ *
+ * <p>Assets come from the {@code static} directory on the classpath, or from a directory on disk
+ * if one is configured. Uncompressed files from disk are not held in memory but sent with
+ * sendfile, straight from the page cache to the socket. Files added or changed after startup
+ * are not seen until the server restarts.
+ *
+ * <p>HTML is served with {@code no-cache}, so browsers revalidate it by ETag and pick up a new
+ * deploy. Files whose names carry a content hash, such as {@code app.3f2a9c1e.js}, are marked
+ * immutable; other files may be cached for the configured max age.
+ */
+public class StaticAssets implements Handler<RoutingContext> {
+    private static final Logger logger = LoggerFactory.getLogger(StaticAssets.class);
+    private static final String CLASSPATH_ROOT = "static";
+    private static final String INDEX = "index.html";
+    private static final String BROTLI_SUFFIX = ".br";
+    private static final int MIN_COMPRESSED_SIZE = 256;
+    private static final Pattern FINGERPRINTED = Pattern.compile(".*\\.[0-9a-fA-F]{8,}\\.[^./]+$");
+    private static final long IMMUTABLE_MAX_AGE_SECONDS = 365L * 24 * 60 * 60;
+    // The qvalue grammar of RFC 9110, section 12.4.2
+    private static final Pattern QVALUE = Pattern.compile("0(\\.\\d{0,3})?|1(\\.0{0,3})?");
+    private static final Pattern ZERO_QVALUE = Pattern.compile("0(\\.0{0,3})?");
+
+    private final String mountPoint;
+    private final Map<String, Asset> assets = new HashMap<>();
+
+    public StaticAssets(ServerOptions options, String mountPoint) {
+        this.mountPoint = mountPoint;
+        String directory = options.getStaticDirectory();
+        try {
+            if (directory != null) {
+                loadDirectory(Paths.get(directory), true, options.getStaticMaxAgeSeconds());
+            } else {
+                loadClasspath(options.getStaticMaxAgeSeconds());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load static assets", e);
+        }
+        logger.info("Loaded {} static asset(s) from {}", assets.size(),
+            directory != null ? directory : "the classpath");
+    }
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        HttpServerRequest request = ctx.request();
+        if (request.method() != HttpMethod.GET && request.method() != HttpMethod.HEAD) {
+            ctx.next();
+            return;
+        }
+        String normalized = ctx.normalizedPath();
+        String path = normalized.length() > mountPoint.length() ? normalized.substring(mountPoint.length()) : "";
+        Asset asset = assets.get(path.isEmpty() || path.endsWith("/") ? path + INDEX : path);
+        if (asset == null) {
+            ctx.next();
+            return;
+        }
+        HttpServerResponse response = ctx.response()
+            .putHeader(HttpHeaders.CONTENT_TYPE, asset.contentType)
+            .putHeader(HttpHeaders.ETAG, asset.etag)
+            .putHeader(HttpHeaders.CACHE_CONTROL, asset.cacheControl)
+            .putHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(asset.etag) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatusCode(304).end();
+            return;
+        }
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        Buffer body;
+        if (asset.brotli != null && accepts(acceptEncoding, "br")) {
+            response.putHeader(HttpHeaders.CONTENT_ENCODING, "br");
+            body = asset.brotli;
+        } else if (asset.gzip != null && accepts(acceptEncoding, "gzip")) {
+            response.putHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            body = asset.gzip;
+        } else if (asset.file != null) {
+            if (request.method() == HttpMethod.HEAD) {
+                response.putHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(asset.length)).end();
+            } else {
+                response.sendFile(asset.file);
+            }
+            return;
+        } else {
+            body = asset.identity;
+        }
+        if (request.method() == HttpMethod.HEAD) {
+            response.putHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(body.length())).end();
+        } else {
+            // Written as a duplicate of the shared direct memory, so the bytes are not copied per response
+            response.end(body);
+        }
+    }
+
+    private void loadClasspath(long maxAgeSeconds) throws IOException {
+        URL root = StaticAssets.class.getClassLoader().getResource(CLASSPATH_ROOT);
+        if (root == null) {
+            return;
+        }
+        if ("file".equals(root.getProtocol())) {
+            try {
+                loadDirectory(Paths.get(root.toURI()), false, maxAgeSeconds);
+            } catch (URISyntaxException e) {
+                throw new IOException("Bad classpath location " + root, e);
+            }
+            return;
+        }
+        // Packaged in the jar
+        JarURLConnection connection = (JarURLConnection) root.openConnection();
+        connection.setUseCaches(false);
+        try (JarFile jar = connection.getJarFile()) {
+            String prefix = CLASSPATH_ROOT + "/";
+            Map<String, byte[]> files = new HashMap<>();
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().startsWith(prefix)) {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        files.put(entry.getName().substring(prefix.length()), in.readAllBytes());
+                    }
+                }
+            }
+            files.forEach((name, bytes) -> {
+                if (!name.endsWith(BROTLI_SUFFIX)) {
+                    add(name, bytes, files.get(name + BROTLI_SUFFIX), null, maxAgeSeconds);
+                }
+            });
+        }
+    }
+
+    private void loadDirectory(Path directory, boolean sendFromDisk, long maxAgeSeconds) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        for (Path file : files) {
+            String name = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            if (name.endsWith(BROTLI_SUFFIX)) {
+                continue;
+            }
+            Path brotli = file.resolveSibling(file.getFileName() + BROTLI_SUFFIX);
+            add(name, Files.readAllBytes(file), Files.isRegularFile(brotli) ? Files.readAllBytes(brotli) : null,
+                sendFromDisk ? file.toAbsolutePath().toString() : null, maxAgeSeconds);
+        }
+    }
+
+    private void add(String name, byte[] bytes, byte[] brotli, String file, long maxAgeSeconds) {
+        byte[] gzip = bytes.length >= MIN_COMPRESSED_SIZE ? gzip(bytes) : null;
+        if (gzip != null && gzip.length >= bytes.length) {
+            gzip = null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        // Weak, as it is shared by the compressed variants of the same content
+        String etag = "W/\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(bytes.length) + "\"";
+        String contentType = contentType(name);
+        String cacheControl;
+        if (contentType.startsWith("text/html")) {
+            cacheControl = "no-cache";
+        } else if (FINGERPRINTED.matcher(name).matches()) {
+            cacheControl = "public, max-age=" + IMMUTABLE_MAX_AGE_SECONDS + ", immutable";
+        } else {
+            cacheControl = "public, max-age=" + maxAgeSeconds;
+        }
+        assets.put(name, new Asset(contentType, etag, cacheControl, bytes.length,
+            file == null ? direct(bytes) : null, direct(gzip), direct(brotli), file));
+    }
+
+    // Accepts a coding unless the client gave it q=0 or a q-value that is not valid
+    static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            if (params[0].trim().equalsIgnoreCase(coding)) {
+                for (int i = 1; i < params.length; i++) {
+                    String param = params[i].trim().replace(" ", "");
+                    if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                        String qvalue = param.substring(2);
+                        return QVALUE.matcher(qvalue).matches() && !ZERO_QVALUE.matcher(qvalue).matches();
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String contentType(String name) {
+        String type = MimeMapping.getMimeTypeForFilename(name);
+        if (type == null) {
+            return "application/octet-stream";
+        }
+        return type.startsWith("text/") || type.equals("application/javascript") || type.equals("application/json")
+            ? type + ";charset=utf-8"
+            : type;
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+        // Compressed once at startup, so the smallest output is worth the time
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    // Off-heap and never released, so every response can write it without a copy
+    private static Buffer direct(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        return BufferImpl.buffer(Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes)));
+    }
+
+    private static final class Asset {
+        final String contentType;
+        final String etag;
+        final String cacheControl;
+        final long length;
+        // Null when the file is sent from disk
+        final Buffer identity;
+        final Buffer gzip;
+        final Buffer brotli;
+        final String file;
+
+        Asset(String contentType, String etag, String cacheControl, long length, Buffer identity, Buffer gzip,
+              Buffer brotli, String file) {
+            this.contentType = contentType;
+            this.etag = etag;
+            this.cacheControl = cacheControl;
+            this.length = length;
+            this.identity = identity;
+            this.gzip = gzip;
+            this.brotli = brotli;
+            this.file = file;
+        }
+    }
+}
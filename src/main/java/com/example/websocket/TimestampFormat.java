@@ -0,0 +1,30 @@
+package com.example.websocket;
+
+/**
+ * How JSON messages carry their timestamp. The binary protocol always uses epoch milliseconds.
+ */
+public enum TimestampFormat {
+    // Local date-time text, e.g. "2024-01-01T12:00:00.123"
+    ISO("iso"),
+    // Milliseconds since the epoch as a JSON number
+    EPOCH_MILLIS("epoch-millis");
+
+    private final String configName;
+
+    TimestampFormat(String configName) {
+        this.configName = configName;
+    }
+
+    public String configName() {
+        return configName;
+    }
+
+    public static TimestampFormat fromConfig(String value) {
+        for (TimestampFormat format : values()) {
+            if (format.configName.equalsIgnoreCase(value) || format.name().equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown timestamp format: " + value);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.websocket;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The current time as text for outbound messages. The text is formatted at most once per
+ * millisecond and shared by every message stamped within it, so stamping a message, or every
+ * copy of a broadcast, allocates nothing.
+ */
+public final class TimestampService {
+    private static volatile Cached cached = new Cached(Long.MIN_VALUE, null);
+
+    private TimestampService() {
+    }
+
+    // ISO-8601 local date-time with millisecond precision
+    public static String isoNow() {
+        return iso(System.currentTimeMillis());
+    }
+
+    public static String iso(long millis) {
+        Cached current = cached;
+        if (current.millis == millis) {
+            return current.text;
+        }
+        String text = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault())
+            .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        // Racing threads may both format the same millisecond; either result is correct. Older
+        // times, such as replayed messages, do not displace the current one.
+        if (millis > current.millis) {
+            cached = new Cached(millis, text);
+        }
+        return text;
+    }
+
+    private static final class Cached {
+        final long millis;
+        final String text;
+
+        Cached(long millis, String text) {
+            this.millis = millis;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.websocket;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Topic subscriptions for every connection on this node. Topics are dot-separated segments
+ * such as {@code sports.football.scores}. Subscriptions to exact topics live in a hash index;
+ * subscriptions with wildcards ({@code sports.*.scores}, {@code sports.#}) live in a
+ * {@link TopicTrie}. Finding the recipients of a publish therefore costs the number of
+ * matching subscribers, not the number of connections.
+ */
+public class TopicRegistry {
+    private static final Pattern SEGMENT_SEPARATOR = Pattern.compile("\\.");
+    static final int MAX_TOPIC_LENGTH = 256;
+
+    private final Map<String, Set<ClientConnection>> exact = new ConcurrentHashMap<>();
+    private final TopicTrie wildcards = new TopicTrie();
+
+    // Returns false if the connection was already subscribed to the pattern
+    public boolean subscribe(String pattern, ClientConnection connection) {
+        if (!connection.subscriptions().add(pattern)) {
+            return false;
+        }
+        if (isWildcard(pattern)) {
+            wildcards.add(segments(pattern), connection);
+        } else {
+            // Added inside the compute, so an unsubscribe on another event loop cannot drop the
+            // set from the index between its lookup and the add
+            exact.compute(pattern, (t, subscribers) -> {
+                if (subscribers == null) {
+                    subscribers = ConcurrentHashMap.newKeySet();
+                }
+                subscribers.add(connection);
+                return subscribers;
+            });
+        }
+        return true;
+    }
+
+    // Returns false if the connection was not subscribed to the pattern
+    public boolean unsubscribe(String pattern, ClientConnection connection) {
+        if (!connection.subscriptions().remove(pattern)) {
+            return false;
+        }
+        if (isWildcard(pattern)) {
+            wildcards.remove(segments(pattern), connection);
+        } else {
+            exact.computeIfPresent(pattern, (t, subscribers) -> {
+                subscribers.remove(connection);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+        return true;
+    }
+
+    public void unsubscribeAll(ClientConnection connection) {
+        for (String pattern : connection.subscriptions().toArray(new String[0])) {
+            unsubscribe(pattern, connection);
+        }
+    }
+
+    public Collection<ClientConnection> subscribers(String topic) {
+        Set<ClientConnection> exactSubscribers = exact.get(topic);
+        if (wildcards.isEmpty()) {
+            return exactSubscribers != null ? exactSubscribers : Collections.emptySet();
+        }
+        // A connection may match through several patterns but must receive the message once
+        Set<ClientConnection> matched = exactSubscribers != null ? new HashSet<>(exactSubscribers) : new HashSet<>();
+        wildcards.match(segments(topic), matched);
+        return matched;
+    }
+
+    // A pattern is a non-empty list of non-empty segments; '#' may only be the last segment
+    public static boolean isValidPattern(String pattern) {
+        if (pattern == null || pattern.isEmpty() || pattern.length() > MAX_TOPIC_LENGTH) {
+            return false;
+        }
+        String[] segments = SEGMENT_SEPARATOR.split(pattern, -1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) {
+                return false;
+            }
+            boolean wildcard = segment.equals(TopicTrie.SINGLE_WILDCARD) || segment.equals(TopicTrie.MULTI_WILDCARD);
+            if (!wildcard && (segment.contains(TopicTrie.SINGLE_WILDCARD) || segment.contains(TopicTrie.MULTI_WILDCARD))) {
+                return false;
+            }
+            if (segment.equals(TopicTrie.MULTI_WILDCARD) && i != segments.length - 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Messages are published to concrete topics only
+    public static boolean isValidTopic(String topic) {
+        return isValidPattern(topic) && !isWildcard(topic);
+    }
+
+    private static boolean isWildcard(String pattern) {
+        return pattern.contains(TopicTrie.SINGLE_WILDCARD) || pattern.contains(TopicTrie.MULTI_WILDCARD);
+    }
+
+    private static String[] segments(String topic) {
+        return SEGMENT_SEPARATOR.split(topic);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.websocket;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wildcard subscriptions keyed by topic segment. {@code *} matches exactly one segment and
+ * {@code #} matches any number of trailing segments, including none. Matching is lock-free;
+ * adds and removes are serialized so empty branches can be pruned safely.
+ */
+class TopicTrie {
+    static final String SINGLE_WILDCARD = "*";
+    static final String MULTI_WILDCARD = "#";
+
+    private final Node root = new Node();
+
+    synchronized void add(String[] segments, ClientConnection subscriber) {
+        Node node = root;
+        for (String segment : segments) {
+            node = node.children.computeIfAbsent(segment, s -> new Node());
+        }
+        node.subscribers.add(subscriber);
+    }
+
+    synchronized boolean remove(String[] segments, ClientConnection subscriber) {
+        return remove(root, segments, 0, subscriber);
+    }
+
+    private boolean remove(Node node, String[] segments, int index, ClientConnection subscriber) {
+        if (index == segments.length) {
+            return node.subscribers.remove(subscriber);
+        }
+        Node child = node.children.get(segments[index]);
+        if (child == null) {
+            return false;
+        }
+        boolean removed = remove(child, segments, index + 1, subscriber);
+        if (child.isEmpty()) {
+            node.children.remove(segments[index]);
+        }
+        return removed;
+    }
+
+    void match(String[] topic, Collection<ClientConnection> out) {
+        match(root, topic, 0, out);
+    }
+
+    private void match(Node node, String[] topic, int index, Collection<ClientConnection> out) {
+        Node multi = node.children.get(MULTI_WILDCARD);
+        if (multi != null) {
+            out.addAll(multi.subscribers);
+        }
+        if (index == topic.length) {
+            out.addAll(node.subscribers);
+            return;
+        }
+        Node exact = node.children.get(topic[index]);
+        if (exact != null) {
+            match(exact, topic, index + 1, out);
+        }
+        Node single = node.children.get(SINGLE_WILDCARD);
+        if (single != null) {
+            match(single, topic, index + 1, out);
+        }
+    }
+
+    boolean isEmpty() {
+        return root.isEmpty();
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new ConcurrentHashMap<>();
+        final Set<ClientConnection> subscribers = ConcurrentHashMap.newKeySet();
+
+        boolean isEmpty() {
+            return children.isEmpty() && subscribers.isEmpty();
+        }
+    }
+}
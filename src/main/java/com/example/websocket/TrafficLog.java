@@ -0,0 +1,151 @@
+package com.example.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs client message traffic without doing any I/O on the event loop. Messages are sampled per
+ * type, and sampled messages are put on a bounded queue that a dedicated thread drains into the
+ * {@code com.example.websocket.traffic} logger, truncating payloads as it formats them. When the
+ * queue is full, events are dropped and counted rather than holding up the event loop.
+ */
+public class TrafficLog {
+    private static final Logger logger = LoggerFactory.getLogger(TrafficLog.class);
+    private static final Logger traffic = LoggerFactory.getLogger("com.example.websocket.traffic");
+    private static final long DROP_REPORT_INTERVAL_MS = 10_000;
+
+    private final boolean enabled;
+    private final BlockingQueue<Event> queue;
+    private final int maxPayloadChars;
+    // Sample rate per MessageType ordinal; types without an override use the default
+    private final double[] sampleRates = new double[MessageType.values().length];
+    private final double defaultSampleRate;
+    private final LongAdder dropped = new LongAdder();
+
+    public TrafficLog(ServerOptions options) {
+        this.enabled = options.isTrafficLogEnabled();
+        this.queue = new ArrayBlockingQueue<>(options.getTrafficLogQueueCapacity());
+        this.maxPayloadChars = options.getTrafficLogMaxPayloadChars();
+        this.defaultSampleRate = options.getTrafficLogDefaultSampleRate();
+        Arrays.fill(sampleRates, defaultSampleRate);
+        for (Map.Entry<String, Double> entry : options.getTrafficLogSampleRates().entrySet()) {
+            MessageType type = MessageType.fromJsonName(entry.getKey());
+            if (type == null) {
+                throw new IllegalArgumentException("Unknown message type in trafficLog.sampleRates: " + entry.getKey());
+            }
+            sampleRates[type.ordinal()] = entry.getValue();
+        }
+        if (enabled) {
+            Thread writer = new Thread(this::drain, "traffic-log-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    // A JSON message; type is its "type" field and may be one the server does not know
+    public void inbound(ClientConnection connection, String type, String message) {
+        if (sampled(MessageType.fromJsonName(type))) {
+            offer(new Event(System.currentTimeMillis(), connection.id(), type, message.length(), message));
+        }
+    }
+
+    // A binary message; only its type and size are logged
+    public void inbound(ClientConnection connection, MessageType type, int bytes) {
+        if (sampled(type)) {
+            String name = type != null ? type.jsonName() : "unknown";
+            offer(new Event(System.currentTimeMillis(), connection.id(), name, bytes, null));
+        }
+    }
+
+    public long droppedEvents() {
+        return dropped.sum();
+    }
+
+    private boolean sampled(MessageType type) {
+        if (!enabled) {
+            return false;
+        }
+        double rate = type != null ? sampleRates[type.ordinal()] : defaultSampleRate;
+        return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    private void offer(Event event) {
+        if (!queue.offer(event)) {
+            dropped.increment();
+        }
+    }
+
+    private void drain() {
+        long reportedDrops = 0;
+        long nextDropReport = System.currentTimeMillis() + DROP_REPORT_INTERVAL_MS;
+        while (true) {
+            try {
+                Event event = queue.poll(DROP_REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    write(event);
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextDropReport) {
+                    long drops = dropped.sum();
+                    if (drops > reportedDrops) {
+                        logger.warn("Dropped {} traffic log events because the queue was full", drops - reportedDrops);
+                        reportedDrops = drops;
+                    }
+                    nextDropReport = now + DROP_REPORT_INTERVAL_MS;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.warn("Failed to write traffic log event", e);
+            }
+        }
+    }
+
+    private void write(Event event) {
+        String receivedAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(event.receivedAt), ZoneId.systemDefault())
+            .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        if (event.payload == null) {
+            traffic.info("in receivedAt={} conn={} type={} size={}", receivedAt, event.connectionId, event.type,
+                event.size);
+        } else {
+            traffic.info("in receivedAt={} conn={} type={} size={} payload={}", receivedAt, event.connectionId,
+                event.type, event.size, truncate(event.payload));
+        }
+    }
+
+    private String truncate(String payload) {
+        if (payload.length() <= maxPayloadChars) {
+            return payload;
+        }
+        return payload.substring(0, maxPayloadChars) + "...(" + (payload.length() - maxPayloadChars) + " more chars)";
+    }
+
+    private static final class Event {
+        final long receivedAt;
+        final String connectionId;
+        final String type;
+        final int size;
+        final String payload;
+
+        Event(long receivedAt, String connectionId, String type, int size, String payload) {
+            this.receivedAt = receivedAt;
+            this.connectionId = connectionId;
+            this.type = type;
+            this.size = size;
+            this.payload = payload;
+        }
+    }
+}
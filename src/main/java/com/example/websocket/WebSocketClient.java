@@ -4,15 +4,19 @@ import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.WebSocket;
 import io.vertx.core.http.WebSocketConnectOptions;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class WebSocketClient extends AbstractVerticle {
@@ -20,13 +24,32 @@ public class WebSocketClient extends AbstractVerticle {
     private static final String DEFAULT_HOST = "localhost";
     private static final int DEFAULT_PORT = 8080;
     private static final String WEBSOCKET_PATH = "/websocket";
+    private static final long RECONNECT_BASE_DELAY_MS = 500;
+    private static final long RECONNECT_MAX_DELAY_MS = 30_000;
+    private static final short GOING_AWAY_STATUS = 1001;
     
     private WebSocket webSocket;
     private String connectionId;
     private final AtomicBoolean connected = new AtomicBoolean(false);
+    private final AtomicBoolean consoleStarted = new AtomicBoolean(false);
+    private volatile boolean quitting;
+    // Sequence number of the newest history message seen, used to catch up after a reconnect
+    private volatile long lastSeq;
+    // Token from the last welcome; presenting it on reconnect keeps this client's connection ID
+    private volatile String resumeToken;
     private HttpClient httpClient;
+    // Failed attempts since the last successful connect, for the backoff
+    private int reconnectAttempts;
+    // Delay the server asked for before the next reconnect, or -1
+    private volatile long reconnectHintMs = -1;
     
     public static void main(String[] args) {
+        // Headless multi-connection load test instead of the interactive console
+        if (args.length > 0 && "--load".equals(args[0])) {
+            LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        
         String host = args.length > 0 ? args[0] : DEFAULT_HOST;
         int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
         
@@ -46,7 +69,7 @@ public class WebSocketClient extends AbstractVerticle {
 
     @Override
     public void start(Promise<Void> startPromise) {
-        httpClient = vertx.createHttpClient();
+        httpClient = vertx.createHttpClient(new HttpClientOptions().setTryUsePerMessageWebSocketCompression(true));
         startPromise.complete();
     }
     
@@ -54,31 +77,35 @@ public class WebSocketClient extends AbstractVerticle {
         WebSocketConnectOptions options = new WebSocketConnectOptions()
             .setHost(host)
             .setPort(port)
-            .setURI(WEBSOCKET_PATH);
+            .setURI(WEBSOCKET_PATH + "?batch=array" + (resumeToken != null ? "&resume=" + resumeToken : ""));
         
         logger.info("Connecting to WebSocket server at ws://{}:{}{}", host, port, WEBSOCKET_PATH);
         
         httpClient.webSocket(options)
-            .onSuccess(this::onWebSocketConnected)
+            .onSuccess(ws -> onWebSocketConnected(ws, host, port))
             .onFailure(throwable -> {
                 logger.error("Failed to connect to WebSocket server", throwable);
                 scheduleReconnect(host, port);
             });
     }
     
-    private void onWebSocketConnected(WebSocket ws) {
+    private void onWebSocketConnected(WebSocket ws, String host, int port) {
         this.webSocket = ws;
         connected.set(true);
+        reconnectAttempts = 0;
         logger.info("Successfully connected to WebSocket server");
         
         // Handle incoming messages
-        ws.textMessageHandler(this::handleIncomingMessage);
+        ws.textMessageHandler(this::handleIncomingFrame);
         
         // Handle connection close
         ws.closeHandler(v -> {
             logger.info("WebSocket connection closed");
             connected.set(false);
-            // Auto-reconnect could be implemented here
+            if (!quitting) {
+                System.out.println("🔌 Connection lost, reconnecting...");
+                scheduleReconnect(host, port);
+            }
         });
         
         // Handle exceptions
@@ -87,60 +114,102 @@ public class WebSocketClient extends AbstractVerticle {
             connected.set(false);
         });
         
-        // Start interactive console
-        startInteractiveConsole();
+        // Start interactive console, once across reconnects
+        if (consoleStarted.compareAndSet(false, true)) {
+            startInteractiveConsole();
+        }
     }
     
-    private void handleIncomingMessage(String message) {
+    // A frame holds one message, or a JSON array of messages when the server packed several
+    private void handleIncomingFrame(String frame) {
         try {
-            JsonObject msgObj = new JsonObject(message);
-            String type = msgObj.getString("type", "unknown");
-            
-            switch (type) {
-                case "welcome":
-                    handleWelcomeMessage(msgObj);
-                    break;
-                case "pong":
-                    handlePongMessage(msgObj);
-                    break;
-                case "broadcast":
-                    handleBroadcastMessage(msgObj);
-                    break;
-                case "private":
-                    handlePrivateMessage(msgObj);
-                    break;
-                case "echo":
-                    handleEchoMessage(msgObj);
-                    break;
-                case "user_joined":
-                    handleUserJoinedMessage(msgObj);
-                    break;
-                case "user_left":
-                    handleUserLeftMessage(msgObj);
-                    break;
-                case "error":
-                    handleErrorMessage(msgObj);
-                    break;
-                default:
-                    logger.info("Received message [{}]: {}", type, message);
-                    break;
+            if (frame.startsWith("[")) {
+                new JsonArray(frame).forEach(message -> handleIncomingMessage((JsonObject) message));
+            } else {
+                handleIncomingMessage(new JsonObject(frame));
             }
         } catch (Exception e) {
-            logger.error("Error processing incoming message: {}", message, e);
+            logger.error("Error processing incoming message: {}", frame, e);
+        }
+    }
+    
+    private void handleIncomingMessage(JsonObject msgObj) {
+        String type = msgObj.getString("type", "unknown");
+        
+        // Messages from the server's history carry a sequence number; a replay may repeat
+        // some that already arrived live
+        Long seq = msgObj.getLong("seq");
+        if (seq != null) {
+            if (seq <= lastSeq) {
+                return;
+            }
+            lastSeq = seq;
+        }
+        
+        switch (type) {
+            case "welcome":
+                handleWelcomeMessage(msgObj);
+                break;
+            case "pong":
+                handlePongMessage(msgObj);
+                break;
+            case "broadcast":
+                handleBroadcastMessage(msgObj);
+                break;
+            case "private":
+                handlePrivateMessage(msgObj);
+                break;
+            case "echo":
+                handleEchoMessage(msgObj);
+                break;
+            case "user_joined":
+                handleUserJoinedMessage(msgObj);
+                break;
+            case "user_left":
+                handleUserLeftMessage(msgObj);
+                break;
+            case "presence":
+                handlePresenceMessage(msgObj);
+                break;
+            case "error":
+                handleErrorMessage(msgObj);
+                break;
+            case "replay_complete":
+                handleReplayComplete(msgObj);
+                break;
+            case "reconnect":
+                handleReconnectMessage(msgObj);
+                break;
+            default:
+                logger.info("Received message [{}]: {}", type, msgObj.encode());
+                break;
         }
     }
     
     private void handleWelcomeMessage(JsonObject msgObj) {
         connectionId = msgObj.getString("connectionId");
+        resumeToken = msgObj.getString("resumeToken");
         String timestamp = msgObj.getString("timestamp");
         String welcomeMsg = msgObj.getString("message");
         
+        if (msgObj.getBoolean("resumed", false)) {
+            System.out.println("🔁 Session resumed as " + connectionId);
+            if (lastSeq > 0) {
+                requestReplay();
+            }
+            return;
+        }
+        
         System.out.println("\n" + "=".repeat(50));
         System.out.println("🎉 " + welcomeMsg);
         System.out.println("📋 Your Connection ID: " + connectionId);
         System.out.println("⏰ Connected at: " + timestamp);
         System.out.println("=".repeat(50));
         printCommands();
+        
+        if (lastSeq > 0) {
+            requestReplay();
+        }
     }
     
     private void handlePongMessage(JsonObject msgObj) {
@@ -183,17 +252,47 @@ public class WebSocketClient extends AbstractVerticle {
         System.out.println("❌ User " + leftId + " left (Total: " + totalConnections + ")");
     }
     
+    // Joins and leaves the server collected over one presence window
+    private void handlePresenceMessage(JsonObject msgObj) {
+        int totalConnections = msgObj.getInteger("totalConnections");
+        msgObj.getJsonArray("joined", new JsonArray()).forEach(id -> {
+            if (!id.equals(connectionId)) {
+                System.out.println("✅ User " + id + " joined");
+            }
+        });
+        msgObj.getJsonArray("left", new JsonArray()).forEach(id -> System.out.println("❌ User " + id + " left"));
+        System.out.println("👥 Total: " + totalConnections);
+    }
+    
     private void handleErrorMessage(JsonObject msgObj) {
         String errorMessage = msgObj.getString("message");
         String timestamp = msgObj.getString("timestamp");
         System.out.println("❗ [" + timestamp + "] Error: " + errorMessage);
     }
     
+    // The server is shutting down; leave now and come back after the delay it picked for us
+    private void handleReconnectMessage(JsonObject msgObj) {
+        reconnectHintMs = msgObj.getLong("delayMs", 0L);
+        System.out.println("🔀 " + msgObj.getString("reason", "Server asked to reconnect")
+            + ", reconnecting in " + reconnectHintMs + " ms");
+        if (webSocket != null) {
+            webSocket.close(GOING_AWAY_STATUS, "Reconnecting");
+        }
+    }
+    
+    private void handleReplayComplete(JsonObject msgObj) {
+        int replayed = msgObj.getInteger("replayed", 0);
+        System.out.println("📜 Caught up: " + replayed + " missed message(s) replayed");
+        if (msgObj.getBoolean("gap", false)) {
+            System.out.println("⚠️ Some missed messages were older than the server keeps");
+        }
+    }
+    
     private void startInteractiveConsole() {
         vertx.executeBlocking(promise -> {
             Scanner scanner = new Scanner(System.in);
             
-            while (connected.get()) {
+            while (!quitting) {
                 System.out.print("\n> ");
                 String input = scanner.nextLine().trim();
                 
@@ -333,14 +432,26 @@ public class WebSocketClient extends AbstractVerticle {
         System.out.println("🔄 Echo sent: " + message);
     }
     
+    // Asks the server for the history messages sent while this client was disconnected
+    private void requestReplay() {
+        JsonObject replayMsg = new JsonObject()
+            .put("type", "replay")
+            .put("lastSeq", lastSeq);
+        
+        webSocket.writeTextMessage(replayMsg.encode());
+        System.out.println("📜 Catching up from message #" + lastSeq);
+    }
+    
     private void showStatus() {
         System.out.println("\n📊 Connection Status:");
         System.out.println("  Connected: " + (connected.get() ? "✅ Yes" : "❌ No"));
         System.out.println("  Connection ID: " + (connectionId != null ? connectionId : "N/A"));
         System.out.println("  WebSocket: " + (webSocket != null ? "Active" : "Inactive"));
+        System.out.println("  Last message #: " + (lastSeq > 0 ? lastSeq : "N/A"));
     }
     
     private void disconnect() {
+        quitting = true;
         if (webSocket != null && connected.get()) {
             webSocket.close();
         }
@@ -350,8 +461,17 @@ public class WebSocketClient extends AbstractVerticle {
         System.exit(0);
     }
     
+    // Waits a random time up to an exponentially growing ceiling (full jitter), so clients that
+    // lost the same server do not all come back at once, unless the server suggested a delay
     private void scheduleReconnect(String host, int port) {
-        vertx.setTimer(5000, id -> {
+        long delay = reconnectHintMs;
+        reconnectHintMs = -1;
+        if (delay < 0) {
+            long ceiling = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_BASE_DELAY_MS << Math.min(reconnectAttempts, 16));
+            delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        }
+        reconnectAttempts++;
+        vertx.setTimer(Math.max(delay, 1), id -> {
             logger.info("Attempting to reconnect...");
             connectToServer(host, port);
         });
@@ -1,58 +1,198 @@
 package com.example.websocket;
 
+import io.micrometer.core.instrument.Meter;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.QueryStringDecoder;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
-import io.vertx.ext.web.handler.StaticHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 public class WebSocketServer extends AbstractVerticle {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketServer.class);
-    private static final int PORT = 8080;
     private static final String WEBSOCKET_PATH = "/websocket";
+    static final String STATIC_PATH = "/static/";
+    private static final String RESUME_PARAM = "resume";
+    private static final String PRESENCE_PARAM = "presence";
+    private static final String PRESENCE_OFF = "off";
+    private static final String BATCH_PARAM = "batch";
+    private static final String BATCH_ARRAY = "array";
+    private static final short NORMAL_CLOSURE_STATUS = 1000;
+    private static final short IDLE_CLOSE_STATUS = 1001;
+    private static final short POLICY_VIOLATION_STATUS = 1008;
+    private static final short SERVICE_RESTART_STATUS = 1012;
     
-    // Store active WebSocket connections
-    private final Map<String, ServerWebSocket> connections = new ConcurrentHashMap<>();
+    // Active WebSocket connections and other state shared with every instance deployed alongside this one
+    private ServerResources resources;
+    private ConnectionRegistry connections;
+    private BroadcastEngine broadcastEngine;
+    private ServerMetrics metrics;
+    private List<Meter> eventLoopMeters = List.of();
+    // Set once stop() begins; new connections are rejected from then on
+    private volatile boolean draining;
     
-    public static void main(String[] args) {
-        Vertx vertx = Vertx.vertx();
-        vertx.deployVerticle(new WebSocketServer())
-            .onSuccess(id -> logger.info("WebSocket Server deployed successfully with deployment ID: {}", id))
+    public WebSocketServer() {
+    }
+    
+    public WebSocketServer(ServerResources resources) {
+        this.resources = resources;
+        this.connections = resources.registry();
+        this.broadcastEngine = resources.broadcastEngine();
+        this.metrics = resources.metrics();
+    }
+    
+    public static void main(String[] args) throws IOException {
+        // Optional JSON config file as the first argument
+        JsonObject config = args.length > 0
+            ? new JsonObject(Files.readString(Path.of(args[0])))
+            : new JsonObject();
+        ServerOptions options = new ServerOptions(config);
+        
+        if (!options.isClusterEnabled()) {
+            deployNode(Vertx.vertx(), config);
+        } else if (ServerOptions.CLUSTER_TRANSPORT_LOCAL.equals(options.getClusterTransport())) {
+            // Several nodes in this JVM on consecutive ports, for trying out clustering on one machine
+            String baseNodeId = options.getClusterNodeId() != null ? options.getClusterNodeId() : "node";
+            for (int i = 0; i < options.getLocalClusterNodes(); i++) {
+                String nodeId = baseNodeId + "-" + (i + 1);
+                JsonObject nodeConfig = config.copy().put("port", options.getPort() + i);
+                JsonObject management = nodeConfig.getJsonObject("management", new JsonObject());
+                nodeConfig.put("management", management.put("port", options.getManagementPort() + i));
+                nodeConfig.getJsonObject("cluster").put("nodeId", nodeId);
+                // Each node keeps its own message history
+                JsonObject history = nodeConfig.getJsonObject("history", new JsonObject());
+                nodeConfig.put("history", history.put("directory",
+                    Path.of(options.getHistoryDirectory(), nodeId).toString()));
+                deployNode(Vertx.vertx(), nodeConfig);
+            }
+        } else {
+            Vertx.clusteredVertx(new VertxOptions())
+                .onSuccess(vertx -> deployNode(vertx, config))
+                .onFailure(throwable ->
+                    logger.error("Failed to start clustered Vert.x, is a cluster manager on the classpath?", throwable));
+        }
+    }
+    
+    private static void deployNode(Vertx vertx, JsonObject config) {
+        ServerOptions options = new ServerOptions(config);
+        
+        // All instances share the listening port, one connection registry and the outbound stats
+        ServerResources resources = new ServerResources(options);
+        DeploymentOptions deploymentOptions = new DeploymentOptions()
+            .setInstances(options.getInstances())
+            .setConfig(config);
+        
+        Future<Void> clusterReady = Future.succeededFuture();
+        if (options.isClusterEnabled()) {
+            ClusterTransport transport = ServerOptions.CLUSTER_TRANSPORT_LOCAL.equals(options.getClusterTransport())
+                ? new LocalClusterTransport(vertx)
+                : new EventBusClusterTransport(vertx);
+            ClusterNode cluster = new ClusterNode(options.getClusterNodeId(), transport,
+                resources.registry(), resources.broadcastEngine(), resources.topics(), resources.history(),
+                resources.sessions(), resources.presence());
+            resources.setCluster(cluster);
+            clusterReady = cluster.start(vertx);
+        }
+        
+        // Probes are answered, as not ready, while the server starts
+        ManagementServer management = options.isManagementEnabled() ? new ManagementServer(resources) : null;
+        if (management != null) {
+            management.start();
+        } else {
+            resources.health().start(vertx, options.getManagementSnapshotIntervalMs());
+        }
+        
+        // On SIGTERM the server instances are undeployed, which drains their connections first
+        Runtime.getRuntime().addShutdownHook(new Thread(
+            () -> shutdown(vertx, resources, management).toCompletionStage().toCompletableFuture().join(), "drain-on-shutdown"));
+        
+        clusterReady
+            .compose(v -> vertx.deployVerticle(() -> new WebSocketServer(resources), deploymentOptions))
+            .onSuccess(id -> {
+                resources.health().setServing(true);
+                logger.info("WebSocket Server deployed successfully with {} instance(s), deployment ID: {}",
+                    options.getInstances(), id);
+            })
             .onFailure(throwable -> {
                 logger.error("Failed to deploy WebSocket Server", throwable);
                 vertx.close();
             });
     }
 
+    // Drains the server instances, then leaves the cluster and stops the management endpoints,
+    // which answer probes until the drain is over, and only then closes Vert.x
+    private static Future<Void> shutdown(Vertx vertx, ServerResources resources, ManagementServer management) {
+        List<Future<Void>> undeployed = new ArrayList<>();
+        vertx.deploymentIDs().forEach(id -> undeployed.add(vertx.undeploy(id)));
+        return Future.join(undeployed)
+            .transform(ar -> resources.cluster() != null ? resources.cluster().close() : Future.<Void>succeededFuture())
+            .transform(ar -> management != null ? management.close() : Future.<Void>succeededFuture())
+            // Forces the history to disk, which may block
+            .transform(ar -> vertx.<Void>executeBlocking(() -> {
+                resources.history().close();
+                return null;
+            }))
+            .transform(ar -> vertx.close());
+    }
+
     @Override
     public void start(Promise<Void> startPromise) {
-        HttpServer server = vertx.createHttpServer();
+        boolean standalone = resources == null;
+        if (standalone) {
+            // Deployed on its own rather than through main()
+            resources = new ServerResources(new ServerOptions(config()));
+            resources.health().start(vertx, resources.options().getManagementSnapshotIntervalMs());
+        }
+        connections = resources.registry();
+        broadcastEngine = resources.broadcastEngine();
+        metrics = resources.metrics();
+        resources.instanceStarted();
+        eventLoopMeters = metrics.bindEventLoop(context, Thread.currentThread().getName(), connections);
+        resources.health().watch(context, Thread.currentThread().getName());
+        int port = resources.options().getPort();
+        
+        // Clients may negotiate the binary protocol; everyone else speaks JSON
+        // Compression is per message and without context takeover on our side, see FrameCompressor
+        HttpServer server = vertx.createHttpServer(new HttpServerOptions()
+            .setWebSocketSubProtocols(WireProtocol.subProtocols())
+            .setPerMessageWebSocketCompressionSupported(resources.options().isCompressionEnabled())
+            .setPerFrameWebSocketCompressionSupported(false)
+            .setWebSocketCompressionLevel(resources.options().getCompressionLevel()));
         Router router = Router.router(vertx);
         
-        // Serve static files (for a simple web client)
-        router.route("/static/*").handler(StaticHandler.create("static"));
-        
-        // Health check endpoint
-        router.get("/health").handler(ctx -> {
-            JsonObject health = new JsonObject()
-                .put("status", "UP")
-                .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
-                .put("activeConnections", connections.size());
-            ctx.response()
-                .putHeader("Content-Type", "application/json")
-                .end(health.encode());
-        });
+        // Serve static files (for a simple web client), loaded and compressed once at startup
+        router.route(STATIC_PATH + "*").handler(resources.staticAssets());
+        
+        // Health check endpoint, kept here for existing clients; probes should use the management port
+        router.get("/health").handler(ctx -> ctx.response()
+            .putHeader("Content-Type", "application/json")
+            .end(resources.health().snapshot().health()));
+        
+        // Prometheus metrics endpoint
+        router.get("/metrics").handler(ctx -> ctx.response()
+            .putHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+            .end(metrics.scrape()));
         
         // WebSocket handler
         server.webSocketHandler(this::handleWebSocket);
@@ -60,11 +200,15 @@ public class WebSocketServer extends AbstractVerticle {
         // HTTP routes
         server.requestHandler(router);
         
-        server.listen(PORT)
+        server.listen(port)
             .onSuccess(httpServer -> {
-                logger.info("WebSocket Server started on port {}", PORT);
-                logger.info("WebSocket endpoint: ws://localhost:{}{}", PORT, WEBSOCKET_PATH);
-                logger.info("Health check: http://localhost:{}/health", PORT);
+                logger.info("WebSocket Server started on port {}", port);
+                logger.info("WebSocket endpoint: ws://localhost:{}{}", port, WEBSOCKET_PATH);
+                logger.info("Health check: http://localhost:{}/health", port);
+                logger.info("Metrics: http://localhost:{}/metrics", port);
+                if (standalone) {
+                    resources.health().setServing(true);
+                }
                 startPromise.complete();
             })
             .onFailure(throwable -> {
@@ -84,195 +228,475 @@ public class WebSocketServer extends AbstractVerticle {
             return;
         }
         
-        String connectionId = UUID.randomUUID().toString();
+        if (draining) {
+            webSocket.reject(503);
+            return;
+        }
+        
         String clientAddress = webSocket.remoteAddress().toString();
+        Context context = vertx.getOrCreateContext();
+        WireProtocol protocol = WireProtocol.negotiate(webSocket.headers().get(HttpHeaderNames.SEC_WEBSOCKET_PROTOCOL));
         
-        logger.info("New WebSocket connection established - ID: {}, Client: {}", connectionId, clientAddress);
+        // A client reconnecting within the grace period presents the token from its last welcome
+        String presentedToken = queryParam(webSocket, RESUME_PARAM);
+        SessionStore.Session session = presentedToken != null ? resources.sessions().resume(presentedToken) : null;
+        String connectionId = session != null ? session.id() : connections.allocateId();
+        int handle = session != null ? session.handle() : connections.allocateHandle();
+        Set<String> subscriptions = session != null ? session.subscriptions() : Set.of();
         
-        // Store the connection
-        connections.put(connectionId, webSocket);
+        // Complete the handshake now so the connection can see which extensions were negotiated
+        webSocket.accept();
         
-        // Send welcome message
-        JsonObject welcomeMsg = new JsonObject()
-            .put("type", "welcome")
-            .put("connectionId", connectionId)
-            .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
-            .put("message", "Connected to WebSocket server");
+        logger.info("{} WebSocket connection - ID: {}, Client: {}, Protocol: {}",
+            session != null ? "Resumed" : "New", connectionId, clientAddress, protocol);
         
-        webSocket.writeTextMessage(welcomeMsg.encode());
+        // Store the connection together with the event loop that owns it
+        ClientConnection connection = new ClientConnection(connectionId, handle, protocol,
+            resources.codec(protocol), webSocket, context, resources.options(), resources.outboundStats(), resources.compressor());
+        connection.setReceivesPresence(!PRESENCE_OFF.equals(queryParam(webSocket, PRESENCE_PARAM)));
+        connection.setPacksMessages(BATCH_ARRAY.equals(queryParam(webSocket, BATCH_PARAM)));
+        String resumeToken;
+        if (session != null) {
+            // The socket being taken over has to leave the registry before its id is reused
+            ClientConnection previous = session.previous();
+            if (previous != null) {
+                connections.unregister(previous);
+            }
+            resumeToken = resources.sessions().attach(session, connection);
+            connections.register(connection);
+            subscriptions.forEach(pattern -> resources.topics().subscribe(pattern, connection));
+            if (previous != null) {
+                takeOver(previous, connection);
+            }
+            metrics.sessionResumed();
+        } else {
+            connections.register(connection);
+            resumeToken = resources.sessions().open(connection);
+            if (resources.cluster() != null) {
+                resources.cluster().localJoined(connection);
+            }
+        }
         
-        // Broadcast to all clients that a new user joined
-        broadcastMessage(new JsonObject()
-            .put("type", "user_joined")
-            .put("connectionId", connectionId)
-            .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
-            .put("totalConnections", connections.size()), connectionId);
+        // Send welcome message
+        connection.send(connection.codec().welcome(connection, resumeToken, session != null,
+            "Connected to WebSocket server"));
+        
+        // Tell all clients that a new user joined, batched with other joins and leaves in the
+        // presence window; a resumed session never left
+        if (session == null) {
+            resources.presence().joined(connection, vertx);
+        }
         
         // Handle incoming messages
-        webSocket.textMessageHandler(message -> {
-            logger.info("Received message from {}: {}", connectionId, message);
-            handleIncomingMessage(connectionId, message);
-        });
+        // Traffic is logged from the handlers, sampled and off the event loop
+        webSocket.textMessageHandler(message -> handleIncomingMessage(connection, message));
+        webSocket.binaryMessageHandler(message -> handleIncomingBinaryMessage(connection, message));
+        
+        // Pongs answer the heartbeat's pings; a connection that stays quiet past the idle timeout is closed
+        webSocket.pongHandler(pong -> connection.touch());
+        resources.heartbeats().watch(connection, () -> reap(connection));
         
         // Handle connection close
         webSocket.closeHandler(v -> {
             logger.info("WebSocket connection closed - ID: {}", connectionId);
-            connections.remove(connectionId);
+            connection.onClosed();
+            connections.unregister(connection);
+            Set<String> subscribed = Set.copyOf(connection.subscriptions());
+            resources.topics().unsubscribeAll(connection);
             
-            // Broadcast to all clients that a user left
-            broadcastMessage(new JsonObject()
-                .put("type", "user_left")
-                .put("connectionId", connectionId)
-                .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
-                .put("totalConnections", connections.size()), null);
+            // A client that said goodbye is gone; otherwise the session waits for it to resume
+            Short status = webSocket.closeStatusCode();
+            boolean ended = status != null && status == NORMAL_CLOSURE_STATUS
+                ? resources.sessions().end(connection)
+                : !resources.sessions().detach(connection, subscribed, this::sessionEnded);
+            if (ended) {
+                sessionEnded(connection);
+            }
         });
         
         // Handle exceptions
         webSocket.exceptionHandler(throwable -> {
             logger.error("WebSocket error for connection {}", connectionId, throwable);
-            connections.remove(connectionId);
+            connections.unregister(connection);
         });
     }
     
-    private void handleIncomingMessage(String connectionId, String message) {
+    // Package-private so the benchmarks can drive message dispatch without a network
+    void handleIncomingMessage(ClientConnection connection, String message) {
+        if (connection.protocol() != WireProtocol.JSON) {
+            sendErrorMessage(connection, "Text frames are not accepted on the " + WireProtocol.BINARY.subProtocol()
+                + " subprotocol");
+            return;
+        }
+        long start = System.nanoTime();
+        connection.touch();
+        metrics.bytesIn(ByteBufUtil.utf8Bytes(message));
         try {
-            JsonObject msgObj = new JsonObject(message);
-            String type = msgObj.getString("type", "message");
+            // Reads only the fields used for routing and handling, without building a JsonObject
+            InboundJsonMessage msg = InboundJsonMessage.read(message);
+            String type = msg.type();
+            resources.trafficLog().inbound(connection, type, message);
+            if (!admitted(connection, MessageType.fromJsonName(type), start)) {
+                return;
+            }
             
             switch (type) {
                 case "ping":
-                    handlePing(connectionId, msgObj);
+                    handlePing(connection, msg.timestamp(), 0L);
                     break;
                 case "broadcast":
-                    handleBroadcast(connectionId, msgObj);
+                    handleBroadcast(connection, msg.messageOrEmpty());
                     break;
                 case "private":
-                    handlePrivateMessage(connectionId, msgObj);
+                    handlePrivateMessage(connection, msg.targetId(), resolvePeer(msg.targetId()), msg.messageOrEmpty());
                     break;
                 case "echo":
-                    handleEcho(connectionId, msgObj);
+                    handleEcho(connection, msg.messageOrEmpty());
+                    break;
+                case "subscribe":
+                    handleSubscribe(connection, msg.topic());
+                    break;
+                case "unsubscribe":
+                    handleUnsubscribe(connection, msg.topic());
+                    break;
+                case "publish":
+                    handlePublish(connection, msg.topic(), msg.messageOrEmpty());
+                    break;
+                case "replay":
+                    handleReplay(connection, msg.lastSeq());
                     break;
                 default:
-                    // Handle as general message
-                    handleGeneralMessage(connectionId, msgObj);
+                    MessageHandler handler = resources.handlers().get(type);
+                    if (handler != null) {
+                        resources.handlers().dispatch(connection, handler, msg.toJsonObject(),
+                            () -> sendErrorMessage(connection, "Failed to handle message type: " + type));
+                    } else {
+                        // Handle as general message
+                        handleGeneralMessage(connection, msg);
+                    }
                     break;
             }
+            metrics.messageHandled(MessageType.fromJsonName(type), System.nanoTime() - start);
+        } catch (Exception e) {
+            logger.error("Error processing message from {}: {}", connection.id(), message, e);
+            metrics.parseFailure();
+            sendErrorMessage(connection, "Invalid message format");
+        }
+    }
+    
+    private void handleIncomingBinaryMessage(ClientConnection connection, Buffer message) {
+        if (connection.protocol() != WireProtocol.BINARY) {
+            sendErrorMessage(connection, "Binary frames require the " + WireProtocol.BINARY.subProtocol() + " subprotocol");
+            return;
+        }
+        long start = System.nanoTime();
+        connection.touch();
+        metrics.bytesIn(message.length());
+        MessageType type = message.length() > 0 ? MessageType.fromCode(message.getUnsignedByte(0)) : null;
+        resources.trafficLog().inbound(connection, type, message.length());
+        if (!admitted(connection, type, start)) {
+            return;
+        }
+        try {
+            resources.binaryCodec().decode(connection, message, inboundHandler);
+            metrics.messageHandled(type, System.nanoTime() - start);
         } catch (Exception e) {
-            logger.error("Error processing message from {}: {}", connectionId, message, e);
-            sendErrorMessage(connectionId, "Invalid message format");
+            logger.error("Error processing binary message from {}", connection.id(), e);
+            metrics.parseFailure();
+            sendErrorMessage(connection, "Invalid message format");
         }
     }
     
-    private void handlePing(String connectionId, JsonObject msgObj) {
-        ServerWebSocket webSocket = connections.get(connectionId);
-        if (webSocket != null) {
-            JsonObject pongMsg = new JsonObject()
-                .put("type", "pong")
-                .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
-                .put("originalTimestamp", msgObj.getString("timestamp"));
-            webSocket.writeTextMessage(pongMsg.encode());
+    // Charges a message to the rate limits and deals with the connection if it is over them
+    private boolean admitted(ClientConnection connection, MessageType type, long now) {
+        RateLimiter rateLimiter = resources.rateLimiter();
+        RateLimiter.Verdict verdict = rateLimiter.admit(connection, type, now);
+        if (verdict == RateLimiter.Verdict.ADMITTED) {
+            return true;
+        }
+        metrics.rateLimited(verdict);
+        if (rateLimiter.action() == RateLimitAction.DISCONNECT) {
+            logger.warn("Closing connection {}: rate limit exceeded", connection.id());
+            connection.socket().close(POLICY_VIOLATION_STATUS, "Rate limit exceeded");
+        } else {
+            sendErrorMessage(connection, "Rate limit exceeded");
         }
+        return false;
     }
     
-    private void handleBroadcast(String connectionId, JsonObject msgObj) {
-        JsonObject broadcastMsg = new JsonObject()
-            .put("type", "broadcast")
-            .put("from", connectionId)
-            .put("message", msgObj.getString("message", ""))
-            .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        
-        broadcastMessage(broadcastMsg, connectionId);
+    private void handlePing(ClientConnection connection, String originalTimestamp, long originalEpochMillis) {
+        connection.send(connection.codec().pong(originalTimestamp, originalEpochMillis));
     }
     
-    private void handlePrivateMessage(String connectionId, JsonObject msgObj) {
-        String targetId = msgObj.getString("targetId");
-        ServerWebSocket targetSocket = connections.get(targetId);
-        
-        if (targetSocket != null) {
-            JsonObject privateMsg = new JsonObject()
-                .put("type", "private")
-                .put("from", connectionId)
-                .put("message", msgObj.getString("message", ""))
-                .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            
-            targetSocket.writeTextMessage(privateMsg.encode());
+    private void handleBroadcast(ClientConnection connection, String message) {
+        long timestamp = System.currentTimeMillis();
+        long seq = resources.history().append(MessageType.BROADCAST, connection.id(), null, message, timestamp);
+        broadcastEngine.broadcast(codec -> codec.broadcast(connection, message, seq, timestamp), connection.handle(), false);
+        if (resources.cluster() != null) {
+            resources.cluster().broadcast(connection, message);
+        }
+    }
+    
+    private void handlePrivateMessage(ClientConnection connection, String requestedTarget, Peer target,
+                                      String message) {
+        if (target != null) {
+            if (target instanceof ClientConnection) {
+                ClientConnection local = (ClientConnection) target;
+                long timestamp = System.currentTimeMillis();
+                long seq = resources.history().append(MessageType.PRIVATE, connection.id(), local.id(), message,
+                    timestamp);
+                local.send(local.codec().privateMessage(connection, message, seq, timestamp));
+            } else if (target instanceof RemotePeer) {
+                // The node holding the target records the message
+                resources.cluster().sendPrivate(connection, (RemotePeer) target, message);
+            } else {
+                // The target is away but may resume; it gets the message when it replays
+                resources.history().append(MessageType.PRIVATE, connection.id(), target.id(), message,
+                    System.currentTimeMillis());
+            }
             
             // Send confirmation to sender
-            ServerWebSocket senderSocket = connections.get(connectionId);
-            if (senderSocket != null) {
-                JsonObject confirmMsg = new JsonObject()
-                    .put("type", "private_sent")
-                    .put("targetId", targetId)
-                    .put("message", msgObj.getString("message", ""))
-                    .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-                senderSocket.writeTextMessage(confirmMsg.encode());
-            }
+            connection.send(connection.codec().privateSent(target, message));
         } else {
-            sendErrorMessage(connectionId, "Target connection not found: " + targetId);
+            sendErrorMessage(connection, "Target connection not found: " + requestedTarget);
+        }
+    }
+    
+    private void handleEcho(ClientConnection connection, String message) {
+        connection.send(connection.codec().echo(message));
+    }
+    
+    private void handleSubscribe(ClientConnection connection, String pattern) {
+        if (!TopicRegistry.isValidPattern(pattern)) {
+            sendErrorMessage(connection, "Invalid topic: " + pattern);
+            return;
         }
+        resources.topics().subscribe(pattern, connection);
+        connection.send(connection.codec().subscription(MessageType.SUBSCRIBED, pattern));
     }
     
-    private void handleEcho(String connectionId, JsonObject msgObj) {
-        ServerWebSocket webSocket = connections.get(connectionId);
-        if (webSocket != null) {
-            JsonObject echoMsg = new JsonObject()
-                .put("type", "echo")
-                .put("originalMessage", msgObj.getString("message", ""))
-                .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            webSocket.writeTextMessage(echoMsg.encode());
+    private void handleUnsubscribe(ClientConnection connection, String pattern) {
+        if (!resources.topics().unsubscribe(pattern, connection)) {
+            sendErrorMessage(connection, "Not subscribed to topic: " + pattern);
+            return;
         }
+        connection.send(connection.codec().subscription(MessageType.UNSUBSCRIBED, pattern));
     }
     
-    private void handleGeneralMessage(String connectionId, JsonObject msgObj) {
-        JsonObject responseMsg = new JsonObject()
-            .put("type", "message_received")
-            .put("connectionId", connectionId)
-            .put("receivedMessage", msgObj)
-            .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        
-        ServerWebSocket webSocket = connections.get(connectionId);
-        if (webSocket != null) {
-            webSocket.writeTextMessage(responseMsg.encode());
+    // Only subscribers are visited, however many connections the server holds
+    private void handlePublish(ClientConnection connection, String topic, String message) {
+        if (!TopicRegistry.isValidTopic(topic)) {
+            sendErrorMessage(connection, "Invalid topic: " + topic);
+            return;
+        }
+        broadcastEngine.broadcast(resources.topics().subscribers(topic),
+            codec -> codec.topicMessage(topic, connection, message), ConnectionRegistry.NO_HANDLE, false);
+        if (resources.cluster() != null) {
+            resources.cluster().publish(connection, topic, message);
+        }
+    }
+    
+    // Sends the recorded messages after lastSeq that this connection may see
+    private void handleReplay(ClientConnection connection, long lastSeq) {
+        if (!resources.history().isEnabled()) {
+            sendErrorMessage(connection, "Message history is disabled");
+            return;
         }
+        new HistoryReplay(connection, connections, resources.history(), lastSeq,
+            resources.options().getHistoryReplayBatchSize()).start();
     }
     
-    private void broadcastMessage(JsonObject message, String excludeConnectionId) {
-        connections.entrySet().parallelStream()
-            .filter(entry -> !entry.getKey().equals(excludeConnectionId))
-            .forEach(entry -> {
-                try {
-                    entry.getValue().writeTextMessage(message.encode());
-                } catch (Exception e) {
-                    logger.warn("Failed to send message to connection {}", entry.getKey(), e);
+    // The client's message is echoed inside the acknowledgement as it was received
+    private void handleGeneralMessage(ClientConnection connection, InboundJsonMessage msg) {
+        connection.send(resources.jsonCodec().messageReceived(connection, msg.raw()));
+    }
+    
+    // Finds a connection on this node, a session on this node whose client is away (only while
+    // history can hold messages for it) or, when clustered, a connection on another node
+    private Peer resolvePeer(String connectionId) {
+        ClientConnection local = connections.get(connectionId);
+        if (local != null) {
+            return local;
+        }
+        Peer detached = resources.history().isEnabled() ? resources.sessions().detached(connectionId) : null;
+        if (detached != null || resources.cluster() == null) {
+            return detached;
+        }
+        return resources.cluster().peer(connectionId);
+    }
+    
+    private Peer resolvePeer(int handle) {
+        ClientConnection local = connections.getByHandle(handle);
+        if (local != null) {
+            return local;
+        }
+        Peer detached = resources.history().isEnabled() ? resources.sessions().detached(handle) : null;
+        if (detached != null || resources.cluster() == null) {
+            return detached;
+        }
+        return resources.cluster().peer(handle);
+    }
+    
+    private static String queryParam(ServerWebSocket webSocket, String name) {
+        List<String> values = new QueryStringDecoder(webSocket.uri()).parameters().get(name);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+    
+    // Closes the socket a resumed connection replaced, on its own event loop, and moves its
+    // topic subscriptions across
+    private void takeOver(ClientConnection previous, ClientConnection connection) {
+        previous.context().runOnContext(v -> {
+            Set<String> subscribed = Set.copyOf(previous.subscriptions());
+            resources.topics().unsubscribeAll(previous);
+            previous.onClosed();
+            previous.close();
+            connection.context().runOnContext(w -> {
+                if (!connection.isClosed()) {
+                    subscribed.forEach(pattern -> resources.topics().subscribe(pattern, connection));
                 }
             });
+        });
+    }
+    
+    // Stops sending to a dead peer right away; the close handler finishes the cleanup once the
+    // socket is gone, which for a half-open connection takes until the closing handshake times out
+    private void reap(ClientConnection connection) {
+        connections.unregister(connection);
+        connection.onClosed();
+        connection.socket().close(IDLE_CLOSE_STATUS, "Idle timeout");
     }
     
-    private void sendErrorMessage(String connectionId, String errorMessage) {
-        ServerWebSocket webSocket = connections.get(connectionId);
-        if (webSocket != null) {
-            JsonObject errorMsg = new JsonObject()
-                .put("type", "error")
-                .put("message", errorMessage)
-                .put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            webSocket.writeTextMessage(errorMsg.encode());
+    // The client is gone for good and its id will not come back
+    private void sessionEnded(Peer subject) {
+        if (resources.cluster() != null) {
+            resources.cluster().localLeft(subject);
         }
+        resources.presence().left(subject, vertx);
+        connections.releaseHandle(subject.handle());
     }
     
+    private void sendErrorMessage(ClientConnection connection, String errorMessage) {
+        connection.send(connection.codec().error(errorMessage));
+    }
+    
+    // Entry point for decoders that hand over individual fields instead of a parsed object
+    private final InboundHandler inboundHandler = new InboundHandler() {
+        @Override
+        public void onPing(ClientConnection connection, String originalTimestamp, long originalEpochMillis) {
+            handlePing(connection, originalTimestamp, originalEpochMillis);
+        }
+        
+        @Override
+        public void onBroadcast(ClientConnection connection, String message) {
+            handleBroadcast(connection, message);
+        }
+        
+        @Override
+        public void onPrivate(ClientConnection connection, String targetId, int targetHandle, String message) {
+            if (targetId != null) {
+                handlePrivateMessage(connection, targetId, resolvePeer(targetId), message);
+            } else {
+                handlePrivateMessage(connection, "#" + targetHandle, resolvePeer(targetHandle), message);
+            }
+        }
+        
+        @Override
+        public void onEcho(ClientConnection connection, String message) {
+            handleEcho(connection, message);
+        }
+        
+        @Override
+        public void onSubscribe(ClientConnection connection, String pattern) {
+            handleSubscribe(connection, pattern);
+        }
+        
+        @Override
+        public void onUnsubscribe(ClientConnection connection, String pattern) {
+            handleUnsubscribe(connection, pattern);
+        }
+        
+        @Override
+        public void onPublish(ClientConnection connection, String topic, String message) {
+            handlePublish(connection, topic, message);
+        }
+        
+        @Override
+        public void onReplay(ClientConnection connection, long lastSeq) {
+            handleReplay(connection, lastSeq);
+        }
+        
+        @Override
+        public void onError(ClientConnection connection, String errorMessage) {
+            sendErrorMessage(connection, errorMessage);
+        }
+    };
+    
     @Override
     public void stop(Promise<Void> stopPromise) {
         logger.info("Stopping WebSocket Server...");
+        metrics.unbindEventLoop(eventLoopMeters);
+        resources.health().unwatch(context);
         
-        // Close all WebSocket connections
-        connections.values().forEach(ws -> {
-            try {
-                ws.close();
-            } catch (Exception e) {
-                logger.warn("Error closing WebSocket connection", e);
-            }
-        });
-        connections.clear();
+        // New connections are turned away and load balancers see the node as not ready
+        draining = true;
+        resources.health().setServing(false);
+        
+        List<ClientConnection> owned = new ArrayList<>(connections.ownedBy(context));
+        ServerOptions options = resources.options();
+        if (!options.isDrainEnabled() || owned.isEmpty()) {
+            owned.forEach(this::closeForShutdown);
+            stopped(stopPromise);
+            return;
+        }
         
-        stopPromise.complete();
+        // Each client is told to come back after its own random delay, so they do not all
+        // reconnect to the remaining nodes at the same moment
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long spread = options.getDrainReconnectSpreadMs();
+        owned.forEach(connection -> connection.send(
+            connection.codec().reconnect(random.nextLong(spread + 1), "Server shutting down")));
+        
+        // Clients that do not leave on their own are closed in batches spread over the deadline
+        int batchSize = Math.max(options.getDrainBatchSize(), 1);
+        int batches = (owned.size() + batchSize - 1) / batchSize;
+        long interval = Math.max(TimeUnit.SECONDS.toMillis(options.getDrainDeadlineSeconds()) / batches, 1);
+        logger.info("Draining {} connection(s) in {} batch(es), one every {} ms", owned.size(), batches, interval);
+        vertx.setTimer(interval, id -> drainBatch(owned, 0, batchSize, interval, stopPromise));
+    }
+    
+    private void drainBatch(List<ClientConnection> owned, int from, int batchSize, long interval,
+                            Promise<Void> stopPromise) {
+        int to = Math.min(from + batchSize, owned.size());
+        for (int i = from; i < to; i++) {
+            closeForShutdown(owned.get(i));
+        }
+        if (to == owned.size()) {
+            stopped(stopPromise);
+        } else {
+            vertx.setTimer(interval, id -> drainBatch(owned, to, batchSize, interval, stopPromise));
+        }
+    }
+    
+    // Once every instance has drained, the node leaves the cluster, so other nodes stop routing to it
+    private void stopped(Promise<Void> stopPromise) {
+        ClusterNode cluster = resources.cluster();
+        if (resources.instanceStopped() && cluster != null) {
+            cluster.close().onComplete(ar -> stopPromise.complete());
+        } else {
+            stopPromise.complete();
+        }
+    }
+    
+    private void closeForShutdown(ClientConnection connection) {
+        if (connection.isClosed()) {
+            return;
+        }
+        try {
+            connections.unregister(connection);
+            resources.topics().unsubscribeAll(connection);
+            connection.socket().close(SERVICE_RESTART_STATUS, "Server restarting");
+        } catch (Exception e) {
+            logger.warn("Error closing WebSocket connection", e);
+        }
     }
 }
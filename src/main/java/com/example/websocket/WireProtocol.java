@@ -0,0 +1,52 @@
+package com.example.websocket;
+
+import io.vertx.core.http.WebSocketFrameType;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Protocols a client can negotiate through the WebSocket subprotocol header. Clients that ask
+ * for no subprotocol, such as the browser client, get JSON.
+ */
+public enum WireProtocol {
+    JSON("chat.json.v1", WebSocketFrameType.TEXT),
+    BINARY("chat.binary.v1", WebSocketFrameType.BINARY);
+
+    private final String subProtocol;
+    private final WebSocketFrameType frameType;
+
+    WireProtocol(String subProtocol, WebSocketFrameType frameType) {
+        this.subProtocol = subProtocol;
+        this.frameType = frameType;
+    }
+
+    public String subProtocol() {
+        return subProtocol;
+    }
+
+    public WebSocketFrameType frameType() {
+        return frameType;
+    }
+
+    public static List<String> subProtocols() {
+        return Arrays.asList(JSON.subProtocol, BINARY.subProtocol);
+    }
+
+    // Picks the first protocol the client asked for in its Sec-WebSocket-Protocol header, which
+    // is also the one the handshake will accept. The header is all that is available before the
+    // handshake completes.
+    public static WireProtocol negotiate(String requestedSubProtocols) {
+        if (requestedSubProtocols != null) {
+            for (String requested : requestedSubProtocols.split(",")) {
+                String name = requested.trim();
+                for (WireProtocol protocol : values()) {
+                    if (protocol.subProtocol.equals(name)) {
+                        return protocol;
+                    }
+                }
+            }
+        }
+        return JSON;
+    }
+}
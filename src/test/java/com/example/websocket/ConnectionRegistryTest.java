@@ -0,0 +1,189 @@
+package com.example.websocket;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionRegistryTest {
+    private Vertx vertx;
+    private ContextInternal context;
+    private ContextInternal previous;
+    private ServerResources resources;
+    private ConnectionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        context = ((VertxInternal) vertx).createEventLoopContext();
+        // Runs the test as the owning event loop, so group changes apply at once
+        previous = context.beginDispatch();
+        resources = new ServerResources(new ServerOptions(new JsonObject()).setTrafficLogEnabled(false));
+        registry = resources.registry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.endDispatch(previous);
+        vertx.close();
+    }
+
+    @Test
+    void handlesStartAboveNoHandle() {
+        assertEquals(1, registry.allocateHandle());
+        assertEquals(2, registry.allocateHandle());
+    }
+
+    @Test
+    void idsAreShortAndUnique() {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            String id = registry.allocateId();
+            assertTrue(id.length() < 16, id);
+            assertTrue(ids.add(id), id);
+        }
+    }
+
+    @Test
+    void freedHandleIsReusedOnlyAfterTheReuseDelay() {
+        List<Integer> handles = allocate(ConnectionRegistry.REUSE_DELAY + 1);
+        int fresh = handles.get(handles.size() - 1) + 1;
+        for (int i = 0; i < ConnectionRegistry.REUSE_DELAY; i++) {
+            registry.releaseHandle(handles.get(i));
+        }
+        // Exactly REUSE_DELAY handles are free, which is not yet more than the delay
+        assertEquals(fresh, registry.allocateHandle());
+
+        registry.releaseHandle(handles.get(ConnectionRegistry.REUSE_DELAY));
+        // One more free handle, so the oldest one comes back first
+        assertEquals(handles.get(0), registry.allocateHandle());
+        assertEquals(fresh + 1, registry.allocateHandle());
+    }
+
+    @Test
+    void freedHandlesComeBackOldestFirstWhenTheRingGrows() {
+        int count = 5000;
+        List<Integer> handles = allocate(count);
+        // Released out of allocation order, past the initial size of the free ring
+        List<Integer> released = new ArrayList<>();
+        for (int i = count - 1; i >= 0; i -= 2) {
+            released.add(handles.get(i));
+        }
+        for (int i = 0; i < count; i += 2) {
+            released.add(handles.get(i));
+        }
+        released.forEach(registry::releaseHandle);
+
+        for (int i = 0; i < count - ConnectionRegistry.REUSE_DELAY; i++) {
+            assertEquals(released.get(i), registry.allocateHandle());
+        }
+        assertEquals(count + 1, registry.allocateHandle());
+    }
+
+    @Test
+    void handleIndexesTheSlotTable() {
+        List<ClientConnection> connections = new ArrayList<>();
+        // Enough to grow the table past its initial size
+        for (int i = 0; i < 3000; i++) {
+            ClientConnection connection = TestConnections.create(resources, context);
+            registry.register(connection);
+            connections.add(connection);
+        }
+        for (ClientConnection connection : connections) {
+            assertSame(connection, registry.getByHandle(connection.handle()));
+            assertSame(connection, registry.get(connection.id()));
+        }
+        assertNull(registry.getByHandle(ConnectionRegistry.NO_HANDLE));
+        assertNull(registry.getByHandle(-1));
+        assertNull(registry.getByHandle(Integer.MAX_VALUE));
+        assertEquals(3000, registry.size());
+    }
+
+    @Test
+    void releasingAHandleEmptiesItsSlot() {
+        ClientConnection connection = TestConnections.create(resources, context);
+        registry.register(connection);
+        assertTrue(registry.unregister(connection));
+        registry.releaseHandle(connection.handle());
+        assertNull(registry.getByHandle(connection.handle()));
+        assertNull(registry.get(connection.id()));
+    }
+
+    @Test
+    void unregisteringAReplacedConnectionKeepsItsSuccessor() {
+        ClientConnection original = TestConnections.create(resources, context);
+        registry.register(original);
+        // A resumed session keeps its id and handle on a new connection
+        ClientConnection resumed = TestConnections.create(resources, context, original.id(), original.handle());
+        registry.register(resumed);
+
+        assertFalse(registry.unregister(original));
+        assertSame(resumed, registry.getByHandle(original.handle()));
+        assertSame(resumed, registry.get(original.id()));
+        assertEquals(List.of(resumed), List.copyOf(registry.ownedBy(context)));
+    }
+
+    @Test
+    void groupStaysDenseAsConnectionsLeave() {
+        List<ClientConnection> connections = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ClientConnection connection = TestConnections.create(resources, context);
+            registry.register(connection);
+            connections.add(connection);
+        }
+        List<ClientConnection> group = registry.ownedBy(context);
+        assertEquals(connections, List.copyOf(group));
+
+        registry.unregister(connections.get(1));
+        registry.unregister(connections.get(4));
+        registry.unregister(connections.get(0));
+
+        assertEquals(2, group.size());
+        Set<ClientConnection> members = new HashSet<>(group);
+        assertEquals(Set.of(connections.get(2), connections.get(3)), members);
+        for (int i = 0; i < group.size(); i++) {
+            assertEquals(i, group.get(i).groupIndex());
+        }
+        assertEquals(-1, connections.get(1).groupIndex());
+
+        // Registering twice does not add a second entry
+        registry.register(connections.get(2));
+        assertEquals(2, group.size());
+    }
+
+    @Test
+    void groupsAreKeptPerContext() {
+        ContextInternal other = ((VertxInternal) vertx).createEventLoopContext();
+        ClientConnection local = TestConnections.create(resources, context);
+        ClientConnection remote = TestConnections.create(resources, other);
+        registry.register(local);
+        registry.register(remote);
+
+        assertEquals(List.of(local), List.copyOf(registry.ownedBy(context)));
+        assertNotEquals(registry.ownedBy(context), registry.ownedBy(other));
+        assertEquals(Set.of(context, other), registry.contexts());
+    }
+
+    private List<Integer> allocate(int count) {
+        List<Integer> handles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            handles.add(registry.allocateHandle());
+        }
+        return handles;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.websocket;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeartbeatMonitorTest {
+    // Pinged after a quiet second, reaped after two
+    private static final int INTERVAL_SECONDS = 1;
+    private static final int IDLE_TIMEOUT_SECONDS = 2;
+
+    private Vertx vertx;
+    private Context context;
+    private ServerResources resources;
+    private HeartbeatMonitor monitor;
+    private final AtomicInteger pings = new AtomicInteger();
+    private final CountDownLatch reaped = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+        ServerOptions options = new ServerOptions(new JsonObject())
+            .setTrafficLogEnabled(false)
+            .setHeartbeatIntervalSeconds(INTERVAL_SECONDS)
+            .setIdleTimeoutSeconds(IDLE_TIMEOUT_SECONDS);
+        resources = new ServerResources(options);
+        monitor = new HeartbeatMonitor(options);
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    void quietConnectionIsPingedThenReaped() throws InterruptedException {
+        ClientConnection connection = watched();
+
+        assertTrue(reaped.await(IDLE_TIMEOUT_SECONDS + 3, TimeUnit.SECONDS));
+        assertTrue(pings.get() >= 1);
+        assertEquals(1, monitor.reapedConnections());
+        assertTrue(System.nanoTime() - connection.lastActivity() >= TimeUnit.SECONDS.toNanos(IDLE_TIMEOUT_SECONDS));
+    }
+
+    @Test
+    void activeConnectionIsLeftAlone() throws InterruptedException {
+        ClientConnection connection = watched();
+
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(IDLE_TIMEOUT_SECONDS + 1);
+        while (System.nanoTime() < until) {
+            connection.touch();
+            Thread.sleep(100);
+        }
+        assertEquals(1, reaped.getCount());
+        assertEquals(0, pings.get());
+        assertEquals(0, monitor.reapedConnections());
+    }
+
+    @Test
+    void connectionIsSparedWhileItsHandlerRuns() throws InterruptedException {
+        ClientConnection connection = watched();
+        connection.setHandlerRunning(true);
+
+        assertFalse(reaped.await(IDLE_TIMEOUT_SECONDS + 1, TimeUnit.SECONDS));
+        assertEquals(0, pings.get());
+
+        // Quiet for longer than the timeout by now, so it goes at the next check
+        connection.setHandlerRunning(false);
+        assertTrue(reaped.await(INTERVAL_SECONDS + 2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void closedConnectionIsNoLongerChecked() throws InterruptedException {
+        ClientConnection connection = watched();
+        connection.onClosed();
+
+        assertFalse(reaped.await(IDLE_TIMEOUT_SECONDS + 1, TimeUnit.SECONDS));
+        assertEquals(0, pings.get());
+        assertEquals(0, monitor.reapedConnections());
+    }
+
+    @Test
+    void disabledMonitorWatchesNothing() throws InterruptedException {
+        monitor = new HeartbeatMonitor(new ServerOptions(new JsonObject())
+            .setHeartbeatEnabled(false)
+            .setHeartbeatIntervalSeconds(INTERVAL_SECONDS)
+            .setIdleTimeoutSeconds(IDLE_TIMEOUT_SECONDS));
+        watched();
+
+        assertFalse(reaped.await(IDLE_TIMEOUT_SECONDS + 1, TimeUnit.SECONDS));
+        assertEquals(0, pings.get());
+    }
+
+    private ClientConnection watched() {
+        ClientConnection connection = TestConnections.create(resources, context, TestConnections.fakeSocket(name -> {
+            if (name.equals("writePing")) {
+                pings.incrementAndGet();
+            }
+        }));
+        monitor.watch(connection, reaped::countDown);
+        return connection;
+    }
+}
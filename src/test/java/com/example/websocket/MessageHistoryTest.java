@@ -0,0 +1,296 @@
+package com.example.websocket;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageHistoryTest {
+    // Room for five of the test's small records, so a few messages fill a segment
+    private static final int SMALL_SEGMENT = 256;
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @TempDir
+    Path directory;
+    private final List<MessageHistory> histories = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        // Stops the writer threads before the directory is deleted
+        histories.forEach(MessageHistory::close);
+    }
+
+    @Test
+    void disabledHistoryRecordsNothing() {
+        MessageHistory history = new MessageHistory(new ServerOptions(new JsonObject()));
+
+        assertFalse(history.isEnabled());
+        assertEquals(0, history.append(MessageType.BROADCAST, "a.1", null, "hello", 1));
+        assertEquals(0, history.lastSeq());
+    }
+
+    @Test
+    void recordsAndReplaysMessageFields() {
+        MessageHistory history = history(4096);
+        long now = System.currentTimeMillis();
+
+        assertEquals(1, history.append(MessageType.BROADCAST, "a.1", null, "hello", now));
+        assertEquals(2, history.append(MessageType.PRIVATE, "a.1", "a.2", "psst", now + 1));
+        assertEquals(3, history.append(MessageType.BROADCAST, "a.2", null, "", now + 2));
+        assertEquals(3, history.lastSeq());
+
+        List<MessageHistory.Entry> entries = history.cursor(0).next(10);
+        assertEquals(3, entries.size());
+        MessageHistory.Entry broadcast = entries.get(0);
+        assertEquals(1, broadcast.seq());
+        assertEquals(now, broadcast.timestamp());
+        assertEquals(MessageType.BROADCAST, broadcast.type());
+        assertEquals("a.1", broadcast.fromId());
+        assertNull(broadcast.targetId());
+        assertEquals("hello", broadcast.message());
+        MessageHistory.Entry privateMessage = entries.get(1);
+        assertEquals(MessageType.PRIVATE, privateMessage.type());
+        assertEquals("a.2", privateMessage.targetId());
+        assertEquals("psst", privateMessage.message());
+        assertEquals("", entries.get(2).message());
+    }
+
+    @Test
+    void cursorStartsAfterTheRequestedSequence() {
+        MessageHistory history = history(4096);
+        appendAll(history, 10);
+
+        MessageHistory.Cursor cursor = history.cursor(6);
+        assertEquals(List.of(7L, 8L), seqs(cursor.next(2)));
+        assertEquals(List.of(9L, 10L), seqs(cursor.next(10)));
+        assertTrue(cursor.next(10).isEmpty());
+        assertFalse(cursor.gap());
+    }
+
+    @Test
+    void rollsOverIntoNewSegmentsWithoutGapsInSequence() {
+        MessageHistory history = history(SMALL_SEGMENT);
+        appendAll(history, 40);
+
+        assertEquals(expectedSeqs(1, 40), seqs(readAll(history.cursor(0))));
+        assertEquals(40, history.lastSeq());
+        // Several segments, named after the first sequence they hold once the writer is done
+        assertTrue(segmentFiles().size() > 2);
+    }
+
+    @Test
+    void caughtUpCursorFollowsAppendsAcrossSegments() {
+        MessageHistory history = history(SMALL_SEGMENT);
+        MessageHistory.Cursor cursor = history.cursor(0);
+        assertTrue(cursor.next(10).isEmpty());
+
+        appendAll(history, 3);
+        assertEquals(List.of(1L, 2L, 3L), seqs(cursor.next(10)));
+        assertTrue(cursor.next(10).isEmpty());
+
+        // Seals the segment the cursor is in and moves on to the next ones
+        appendAll(history, 12);
+        assertEquals(expectedSeqs(4, 15), seqs(readAll(cursor)));
+        assertEquals(15, cursor.position());
+        assertFalse(cursor.gap());
+    }
+
+    @Test
+    void refusesMessagesLargerThanASegment() {
+        MessageHistory history = history(SMALL_SEGMENT);
+        appendAll(history, 2);
+
+        assertEquals(0, history.append(MessageType.BROADCAST, "a.1", null, "x".repeat(SMALL_SEGMENT), 1));
+        assertEquals(2, history.lastSeq());
+        assertEquals(3, append(history, "after"));
+    }
+
+    @Test
+    void concurrentAppendsGetDistinctSequencesInFileOrder() throws InterruptedException {
+        MessageHistory history = history(4096);
+        int threads = 4;
+        int perThread = 2000;
+        Map<Long, String> written = new ConcurrentHashMap<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int writer = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    String message = writer + ":" + i;
+                    written.put(append(history, message), message);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(threads * perThread, written.size());
+        List<MessageHistory.Entry> entries = readAll(history.cursor(0));
+        assertEquals(expectedSeqs(1, threads * perThread), seqs(entries));
+        for (MessageHistory.Entry entry : entries) {
+            assertEquals(written.get(entry.seq()), entry.message());
+        }
+    }
+
+    @Test
+    void retentionDeletesOldestSegmentsAndReportsTheGap() {
+        MessageHistory history = open(options(SMALL_SEGMENT).setHistoryMaxBytes(3L * SMALL_SEGMENT));
+        appendAll(history, 60);
+
+        awaitTrue(() -> history.cursor(0).gap(), "old segments were not deleted");
+        MessageHistory.Cursor cursor = history.cursor(0);
+        List<MessageHistory.Entry> entries = readAll(cursor);
+        assertTrue(cursor.gap());
+        long first = entries.get(0).seq();
+        assertTrue(first > 1);
+        // What is left is still contiguous up to the newest message
+        assertEquals(expectedSeqs(first, 60), seqs(entries));
+    }
+
+    @Test
+    void recoversSegmentsAfterARestart() {
+        MessageHistory history = history(SMALL_SEGMENT);
+        appendAll(history, 8);
+        // Possibly before the writer has renamed the newest segment
+        history.close();
+
+        assertRecovers(history(SMALL_SEGMENT), 8);
+    }
+
+    @Test
+    void recoversSegmentsLeftByAProcessThatDidNotClose() {
+        MessageHistory history = history(SMALL_SEGMENT);
+        appendAll(history, 8);
+        // Two segments under their final names, and the spare the writer prepared next
+        awaitTrue(() -> segmentFiles().size() == 2 && spareFiles() == 1, "segments were not renamed");
+
+        // Nothing was forced; the pages are still those the first mapping wrote
+        assertRecovers(history(SMALL_SEGMENT), 8);
+    }
+
+    @Test
+    void appendsAfterARestartStartANewSegment() {
+        MessageHistory history = history(4096);
+        appendAll(history, 3);
+        history.close();
+
+        MessageHistory restarted = history(4096);
+        appendAll(restarted, 3);
+        assertEquals(expectedSeqs(1, 6), seqs(readAll(restarted.cursor(0))));
+        assertEquals(expectedSeqs(5, 6), seqs(readAll(restarted.cursor(4))));
+    }
+
+    private static void assertRecovers(MessageHistory restarted, long lastSeq) {
+        assertEquals(lastSeq, restarted.lastSeq());
+        assertEquals(lastSeq + 1, append(restarted, "after restart"));
+        List<MessageHistory.Entry> entries = readAll(restarted.cursor(0));
+        assertEquals(expectedSeqs(1, lastSeq + 1), seqs(entries));
+        assertEquals("after restart", entries.get(entries.size() - 1).message());
+        assertFalse(restarted.cursor(0).gap());
+    }
+
+    private MessageHistory history(int segmentSize) {
+        return open(options(segmentSize));
+    }
+
+    private MessageHistory open(ServerOptions options) {
+        MessageHistory history = new MessageHistory(options);
+        histories.add(history);
+        return history;
+    }
+
+    private ServerOptions options(int segmentSize) {
+        return new ServerOptions(new JsonObject())
+            .setHistoryEnabled(true)
+            .setHistoryDirectory(directory.toString())
+            .setHistorySegmentSize(segmentSize);
+    }
+
+    private static void appendAll(MessageHistory history, int count) {
+        long first = history.lastSeq() + 1;
+        for (int i = 0; i < count; i++) {
+            assertEquals(first + i, append(history, "m-" + i));
+        }
+    }
+
+    // Retries while the writer thread is still preparing the next segment
+    private static long append(MessageHistory history, String message) {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (true) {
+            long seq = history.append(MessageType.BROADCAST, "a.1", null, message, System.currentTimeMillis());
+            if (seq != 0) {
+                return seq;
+            }
+            assertTrue(System.nanoTime() < deadline, "no history segment became ready");
+            Thread.onSpinWait();
+        }
+    }
+
+    private static List<MessageHistory.Entry> readAll(MessageHistory.Cursor cursor) {
+        List<MessageHistory.Entry> entries = new ArrayList<>();
+        List<MessageHistory.Entry> batch;
+        while (!(batch = cursor.next(7)).isEmpty()) {
+            entries.addAll(batch);
+        }
+        return entries;
+    }
+
+    private static List<Long> seqs(List<MessageHistory.Entry> entries) {
+        return entries.stream().map(MessageHistory.Entry::seq).toList();
+    }
+
+    private static List<Long> expectedSeqs(long first, long last) {
+        List<Long> seqs = new ArrayList<>();
+        for (long seq = first; seq <= last; seq++) {
+            seqs.add(seq);
+        }
+        return seqs;
+    }
+
+    private List<Path> segmentFiles() {
+        return files().stream().filter(file -> file.getFileName().toString().matches("\\d{20}\\.log")).toList();
+    }
+
+    private long spareFiles() {
+        return files().stream().filter(file -> file.getFileName().toString().startsWith("next-")).count();
+    }
+
+    private List<Path> files() {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.toList();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, String failure) {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, failure);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.websocket;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RateLimiterTest {
+    private static final long NOW = 1_000_000_000L;
+
+    @Test
+    void refillsOverTime() {
+        ServerOptions options = options().setRateLimitMessagesPerSecond(10).setRateLimitBurst(1);
+        RateLimiter limiter = new RateLimiter(options);
+        ClientConnection connection = connection(options);
+
+        assertEquals(RateLimiter.Verdict.ADMITTED, limiter.admit(connection, MessageType.ECHO, NOW));
+        assertEquals(RateLimiter.Verdict.CONNECTION_LIMITED, limiter.admit(connection, MessageType.ECHO, NOW));
+        assertEquals(RateLimiter.Verdict.ADMITTED, limiter.admit(connection, MessageType.ECHO, NOW + 100_000_000L));
+    }
+
+    @Test
+    void globalRefusalDoesNotChargeTheConnection() {
+        ServerOptions options = options().setRateLimitMessagesPerSecond(1).setRateLimitBurst(2)
+            .setRateLimitGlobalBroadcastsPerSecond(1).setRateLimitGlobalBroadcastBurst(1);
+        RateLimiter limiter = new RateLimiter(options);
+        ClientConnection connection = connection(options);
+
+        assertEquals(RateLimiter.Verdict.ADMITTED, limiter.admit(connection, MessageType.BROADCAST, NOW));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(RateLimiter.Verdict.GLOBALLY_LIMITED, limiter.admit(connection, MessageType.BROADCAST, NOW));
+        }
+        // The refused broadcasts left the second token of the burst in place
+        assertEquals(RateLimiter.Verdict.ADMITTED, limiter.admit(connection, MessageType.ECHO, NOW));
+        assertEquals(RateLimiter.Verdict.CONNECTION_LIMITED, limiter.admit(connection, MessageType.ECHO, NOW));
+    }
+
+    @Test
+    void perTypeRefusalDoesNotChargeTheConnection() {
+        ServerOptions options = options().setRateLimitMessagesPerSecond(1).setRateLimitBurst(2)
+            .setRateLimitPerType(Map.of("broadcast", new ServerOptions.Rate(1, 1)));
+        RateLimiter limiter = new RateLimiter(options);
+        ClientConnection connection = connection(options);
+
+        assertEquals(RateLimiter.Verdict.ADMITTED, limiter.admit(connection, MessageType.BROADCAST, NOW));
+        assertEquals(RateLimiter.Verdict.CONNECTION_LIMITED, limiter.admit(connection, MessageType.BROADCAST, NOW));
+        assertEquals(RateLimiter.Verdict.ADMITTED, limiter.admit(connection, MessageType.ECHO, NOW));
+        assertEquals(RateLimiter.Verdict.CONNECTION_LIMITED, limiter.admit(connection, MessageType.ECHO, NOW));
+    }
+
+    private static ServerOptions options() {
+        return new ServerOptions(new JsonObject()).setTrafficLogEnabled(false);
+    }
+
+    private static ClientConnection connection(ServerOptions options) {
+        return TestConnections.create(new ServerResources(options), null);
+    }
+}
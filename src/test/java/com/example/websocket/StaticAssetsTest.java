@@ -0,0 +1,45 @@
+package com.example.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StaticAssetsTest {
+
+    @Test
+    void acceptsListedCoding() {
+        assertTrue(StaticAssets.accepts("gzip", "gzip"));
+        assertTrue(StaticAssets.accepts("br, gzip, deflate", "gzip"));
+        assertTrue(StaticAssets.accepts("GZIP", "gzip"));
+    }
+
+    @Test
+    void refusesMissingCoding() {
+        assertFalse(StaticAssets.accepts(null, "gzip"));
+        assertFalse(StaticAssets.accepts("", "gzip"));
+        assertFalse(StaticAssets.accepts("br, deflate", "gzip"));
+    }
+
+    @Test
+    void honoursQValues() {
+        assertTrue(StaticAssets.accepts("gzip;q=1", "gzip"));
+        assertTrue(StaticAssets.accepts("gzip;q=0.5", "gzip"));
+        assertTrue(StaticAssets.accepts("gzip; q=0.001", "gzip"));
+        assertTrue(StaticAssets.accepts("br;q=0, gzip;Q=1.000", "gzip"));
+        assertFalse(StaticAssets.accepts("gzip;q=0", "gzip"));
+        assertFalse(StaticAssets.accepts("gzip;q=0.000", "gzip"));
+        assertFalse(StaticAssets.accepts("br, gzip ; q=0", "gzip"));
+    }
+
+    @Test
+    void refusesMalformedQValues() {
+        assertFalse(StaticAssets.accepts("gzip;q=abc", "gzip"));
+        assertFalse(StaticAssets.accepts("gzip;q=", "gzip"));
+        assertFalse(StaticAssets.accepts("gzip;q=0.5000", "gzip"));
+        assertFalse(StaticAssets.accepts("gzip;q=1.5", "gzip"));
+        assertFalse(StaticAssets.accepts("gzip;q=-1", "gzip"));
+        assertFalse(StaticAssets.accepts("gzip;q=1e0", "gzip"));
+        assertFalse(StaticAssets.accepts("gzip;q=NaN", "gzip"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.websocket;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.http.ServerWebSocket;
+
+import java.lang.reflect.Proxy;
+import java.util.function.Consumer;
+
+/**
+ * Connections over fake sockets that accept and drop everything written to them, for tests
+ * that need a {@link ClientConnection} but no network.
+ */
+final class TestConnections {
+
+    private TestConnections() {
+    }
+
+    // A JSON connection with a fresh id and handle from the resources' registry, not yet registered
+    static ClientConnection create(ServerResources resources, Context context) {
+        ConnectionRegistry registry = resources.registry();
+        return create(resources, context, registry.allocateId(), registry.allocateHandle());
+    }
+
+    static ClientConnection create(ServerResources resources, Context context, String id, int handle) {
+        return create(resources, context, id, handle, fakeSocket(name -> { }));
+    }
+
+    static ClientConnection create(ServerResources resources, Context context, ServerWebSocket socket) {
+        ConnectionRegistry registry = resources.registry();
+        return create(resources, context, registry.allocateId(), registry.allocateHandle(), socket);
+    }
+
+    private static ClientConnection create(ServerResources resources, Context context, String id, int handle,
+                                           ServerWebSocket socket) {
+        return new ClientConnection(id, handle, WireProtocol.JSON, resources.codec(WireProtocol.JSON), socket,
+            context, resources.options(), resources.outboundStats(), resources.compressor());
+    }
+
+    // A socket that reports the name of every method called on it
+    static ServerWebSocket fakeSocket(Consumer<String> calls) {
+        return (ServerWebSocket) Proxy.newProxyInstance(ServerWebSocket.class.getClassLoader(),
+            new Class<?>[] {ServerWebSocket.class}, (proxy, method, args) -> {
+                calls.accept(method.getName());
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        break;
+                }
+                Class<?> returnType = method.getReturnType();
+                if (returnType == ServerWebSocket.class) {
+                    return proxy;
+                }
+                if (returnType == Future.class) {
+                    return Future.succeededFuture();
+                }
+                if (returnType == boolean.class) {
+                    return false;
+                }
+                return null;
+            });
+    }
+}